@@ -18,14 +18,27 @@ package lstreamer;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
 class AceitarConexao extends Pacote {
 
-    static final int TAMANHO_MAX = (Byte.BYTES+(2*Integer.BYTES));
+    static final int TAMANHO_MAX = (6*Byte.BYTES+(5*Integer.BYTES)+(2*Long.BYTES)+16+Short.BYTES);
     
     private int idConexao;
     private int quantidadePacotesPrevistos;
+    private long tamanhoArquivo;
+    private int tamanhoDados;
+    private int pacotesPorBuffer;
+    private long dataDeModificacao;
+    private int pacoteInicial;
+    private int quantidadeDeCanais;
+    private boolean acompanhando;
+    private boolean comprimindo;
+    private boolean verificando;
+    private Copias copias;
+    private InetSocketAddress grupo;
     
     AceitarConexao(InetAddress hostname, int porta) {
         super(hostname, porta, Flag.ACEITA_CONEXAO.getByte());
@@ -46,18 +59,105 @@ class AceitarConexao extends Pacote {
     public void setQuantidadePacotesPrevistos(int quantidadePacotesPrevistos) {
         this.quantidadePacotesPrevistos = quantidadePacotesPrevistos;
     }
+
+    long getTamanhoArquivo() {
+        return tamanhoArquivo;
+    }
+
+    void setTamanhoArquivo(long tamanhoArquivo) {
+        this.tamanhoArquivo = tamanhoArquivo;
+    }
     
-    DatagramPacket set(int idConexao, int quantidadePacotesPrevistos) {
-        ByteBuffer byteBuffer = ByteBuffer.allocate(TAMANHO_MAX);
+    int getTamanhoDados() {
+        return tamanhoDados;
+    }
+
+    void setTamanhoDados(int tamanhoDados) {
+        this.tamanhoDados = tamanhoDados;
+    }
+
+    int getPacotesPorBuffer() {
+        return pacotesPorBuffer;
+    }
+
+    void setPacotesPorBuffer(int pacotesPorBuffer) {
+        this.pacotesPorBuffer = pacotesPorBuffer;
+    }
+
+    long getDataDeModificacao() {
+        return dataDeModificacao;
+    }
+
+    int getPacoteInicial() {
+        return pacoteInicial;
+    }
+
+    int getQuantidadeDeCanais() {
+        return quantidadeDeCanais;
+    }
+
+    boolean isAcompanhando() {
+        return acompanhando;
+    }
+
+    boolean isComprimindo() {
+        return comprimindo;
+    }
+
+    boolean isVerificando() {
+        return verificando;
+    }
+
+    Copias getCopias() {
+        return copias;
+    }
+
+    InetSocketAddress getGrupo() {
+        return grupo;
+    }
+
+    DatagramPacket set(int idConexao, int quantidadePacotesPrevistos, long tamanhoArquivo, int tamanhoDados, int pacotesPorBuffer,
+            long dataDeModificacao, int pacoteInicial, int quantidadeDeCanais, boolean acompanhando, boolean comprimindo, boolean verificando, InetSocketAddress grupo, Copias copias, int tamanhoDoDatagrama) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Math.max(TAMANHO_MAX, tamanhoDoDatagrama));
         byteBuffer.put(Flag.ACEITA_CONEXAO.getByte());
         byteBuffer.putInt(idConexao);
         byteBuffer.putInt(quantidadePacotesPrevistos);
+        byteBuffer.putLong(tamanhoArquivo);
+        byteBuffer.putInt(tamanhoDados);
+        byteBuffer.putInt(pacotesPorBuffer);
+        byteBuffer.putLong(dataDeModificacao);
+        byteBuffer.putInt(pacoteInicial);
+        byteBuffer.put((byte) quantidadeDeCanais);
+        byteBuffer.put((byte) (acompanhando ? 1 : 0));
+        byteBuffer.put((byte) (comprimindo ? 1 : 0));
+        byteBuffer.put((byte) (verificando ? 1 : 0));
+        if (grupo == null) {
+            byteBuffer.put((byte) 0);
+        } else {
+            byteBuffer.put((byte) grupo.getAddress().getAddress().length);
+            byteBuffer.put(grupo.getAddress().getAddress());
+            byteBuffer.putShort((short) grupo.getPort());
+        }
+        if (copias != null) {
+            copias.put(byteBuffer);
+        }
         
         byte[] bytes = byteBuffer.array();
         
         this.tamanho = bytes.length;
         this.idConexao = idConexao;
         this.quantidadePacotesPrevistos = quantidadePacotesPrevistos;
+        this.tamanhoArquivo = tamanhoArquivo;
+        this.tamanhoDados = tamanhoDados;
+        this.pacotesPorBuffer = pacotesPorBuffer;
+        this.dataDeModificacao = dataDeModificacao;
+        this.pacoteInicial = pacoteInicial;
+        this.quantidadeDeCanais = quantidadeDeCanais;
+        this.acompanhando = acompanhando;
+        this.comprimindo = comprimindo;
+        this.verificando = verificando;
+        this.grupo = grupo;
+        this.copias = copias;
 
         DatagramPacket dp = new DatagramPacket(bytes, bytes.length, HOSTNAME, PORTA);
         
@@ -71,12 +171,42 @@ class AceitarConexao extends Pacote {
         flag = byteBuffer.get();
         idConexao = byteBuffer.getInt();
         quantidadePacotesPrevistos = byteBuffer.getInt();
+        tamanhoArquivo = byteBuffer.getLong();
+        this.tamanhoDados = byteBuffer.getInt();
+        pacotesPorBuffer = byteBuffer.getInt();
+        dataDeModificacao = byteBuffer.getLong();
+        pacoteInicial = byteBuffer.getInt();
+        quantidadeDeCanais = byteBuffer.get() & 0xFF;
+        acompanhando = byteBuffer.get() != 0;
+        comprimindo = byteBuffer.get() != 0;
+        verificando = byteBuffer.get() != 0;
+        byteBuffer.limit(tamanhoDados);
+        grupo = lerGrupo(byteBuffer);
+        copias = Copias.ler(byteBuffer, this.tamanhoDados, quantidadePacotesPrevistos);
         
-        int bytesRestantes = tamanhoDados - (Byte.BYTES+(2*Integer.BYTES));
+        int bytesRestantes = tamanhoDados - byteBuffer.position();
         byte[] bytes = new byte[bytesRestantes];
         byteBuffer.get(bytes);
         
         this.tamanho = bytes.length;
-    }   
+    }
+
+    private static InetSocketAddress lerGrupo(ByteBuffer byteBuffer) {
+        int bytesDoEndereco = byteBuffer.get() & 0xFF;
+
+        if ((bytesDoEndereco != 4 && bytesDoEndereco != 16) || byteBuffer.remaining() < bytesDoEndereco + Short.BYTES) {
+            return null;
+        }
+
+        byte[] endereco = new byte[bytesDoEndereco];
+        byteBuffer.get(endereco);
+        int porta = byteBuffer.getShort() & 0xFFFF;
+
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(endereco), porta);
+        } catch (UnknownHostException ex) {
+            return null;
+        }
+    }
     
 }
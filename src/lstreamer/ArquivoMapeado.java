@@ -0,0 +1,152 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+class ArquivoMapeado {
+
+    private static final int TAMANHO_MAXIMO_REGIAO = 1 << 26;
+
+    private final FileChannel CANAL;
+    private final long DATA_DE_MODIFICACAO;
+    private final int TAMANHO_DADOS;
+    private final int PACOTES_POR_REGIAO;
+
+    private MappedByteBuffer[] regioes;
+    private int primeiraRegiao;
+    private volatile long tamanho;
+
+    ArquivoMapeado(String caminho, int tamanhoDados) throws IOException {
+        this.CANAL = new FileInputStream(caminho).getChannel();
+        this.tamanho = CANAL.size();
+        this.DATA_DE_MODIFICACAO = new File(caminho).lastModified();
+        this.TAMANHO_DADOS = tamanhoDados;
+        this.PACOTES_POR_REGIAO = TAMANHO_MAXIMO_REGIAO / tamanhoDados;
+        this.regioes = new MappedByteBuffer[(getQuantidadeDePacotes() + PACOTES_POR_REGIAO - 1) / PACOTES_POR_REGIAO];
+        this.primeiraRegiao = 0;
+    }
+
+    long getTamanho() {
+        return tamanho;
+    }
+
+    long getDataDeModificacao() {
+        return DATA_DE_MODIFICACAO;
+    }
+
+    int getQuantidadeDePacotes() {
+        return (int) ((tamanho + TAMANHO_DADOS - 1) / TAMANHO_DADOS);
+    }
+
+    int getQuantidadeDePacotesCompletos() {
+        return (int) (tamanho / TAMANHO_DADOS);
+    }
+
+    int getTamanhoDados(int sequencia) {
+        long inicio = (long) sequencia * TAMANHO_DADOS;
+
+        return (int) Math.min(TAMANHO_DADOS, tamanho - inicio);
+    }
+
+    void get(int sequencia, ByteBuffer destino) throws IOException {
+        ByteBuffer regiao;
+        int tamanhoDados;
+
+        synchronized (this) {
+            regiao = getRegiao(sequencia).duplicate();
+            tamanhoDados = getTamanhoDados(sequencia);
+        }
+
+        int posicao = (sequencia % PACOTES_POR_REGIAO) * TAMANHO_DADOS;
+
+        regiao.clear();
+        regiao.position(posicao);
+        regiao.limit(posicao + tamanhoDados);
+        destino.put(regiao);
+    }
+
+    synchronized boolean atualizarTamanho() throws IOException {
+        long novoTamanho = CANAL.size();
+
+        if (novoTamanho <= tamanho) {
+            return false;
+        }
+
+        if (tamanho > 0) {
+            int ultimaRegiao = (getQuantidadeDePacotes() - 1) / PACOTES_POR_REGIAO;
+            if (ultimaRegiao < regioes.length) {
+                regioes[ultimaRegiao] = null;
+            }
+        }
+
+        tamanho = novoTamanho;
+        regioes = Arrays.copyOf(regioes, Math.max(regioes.length, (getQuantidadeDePacotes() + PACOTES_POR_REGIAO - 1) / PACOTES_POR_REGIAO));
+
+        return true;
+    }
+
+    void combinar(int sequencia, ByteBuffer destino, int posicaoDestino) throws IOException {
+        MappedByteBuffer regiao = getRegiao(sequencia);
+        int posicao = (sequencia % PACOTES_POR_REGIAO) * TAMANHO_DADOS;
+
+        regiao.clear();
+        Reparo.combinar(destino, posicaoDestino, regiao, posicao, getTamanhoDados(sequencia));
+    }
+
+    synchronized void liberarAte(int sequencia) {
+        int indice = Math.min(sequencia / PACOTES_POR_REGIAO, regioes.length);
+
+        while (primeiraRegiao < indice) {
+            regioes[primeiraRegiao] = null;
+            primeiraRegiao++;
+        }
+    }
+
+    synchronized void fechar() {
+        regioes = new MappedByteBuffer[0];
+
+        try {
+            CANAL.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private synchronized MappedByteBuffer getRegiao(int sequencia) throws IOException {
+        int indice = sequencia / PACOTES_POR_REGIAO;
+
+        MappedByteBuffer regiao = regioes[indice];
+        if (regiao == null) {
+            long inicio = (long) indice * PACOTES_POR_REGIAO * TAMANHO_DADOS;
+            long tamanhoDaRegiao = Math.min((long) PACOTES_POR_REGIAO * TAMANHO_DADOS, tamanho - inicio);
+
+            regiao = CANAL.map(FileChannel.MapMode.READ_ONLY, inicio, tamanhoDaRegiao);
+            if (indice >= primeiraRegiao) {
+                regioes[indice] = regiao;
+            }
+        }
+
+        return regiao;
+    }
+
+}
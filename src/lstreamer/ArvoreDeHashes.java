@@ -0,0 +1,221 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Selector;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class ArvoreDeHashes {
+
+    static final int TAMANHO_HASH = 32;
+
+    private static final byte PREFIXO_DA_FOLHA = 0;
+    private static final byte PREFIXO_DO_NO = 1;
+
+    private static final ThreadLocal<MessageDigest> RESUMOS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> LEITURAS = new ThreadLocal<ByteBuffer>();
+
+    private final String CAMINHO;
+    private final long TAMANHO_ARQUIVO;
+    private final long DATA_DE_MODIFICACAO;
+    private final int TAMANHO_DO_BLOCO;
+    private final int QUANTIDADE_DE_BLOCOS;
+
+    private byte[] folhas;
+    private AtomicLongArray prontas;
+    private AtomicInteger pendentes;
+    private ExecutorService trabalhadores;
+    private volatile byte[] raiz;
+    private volatile boolean falhou;
+
+    ArvoreDeHashes(String caminho, long tamanhoArquivo, long dataDeModificacao, int tamanhoDoBloco) {
+        this.CAMINHO = caminho;
+        this.TAMANHO_ARQUIVO = tamanhoArquivo;
+        this.DATA_DE_MODIFICACAO = dataDeModificacao;
+        this.TAMANHO_DO_BLOCO = tamanhoDoBloco;
+        this.QUANTIDADE_DE_BLOCOS = (int) ((tamanhoArquivo + tamanhoDoBloco - 1) / tamanhoDoBloco);
+        this.folhas = new byte[QUANTIDADE_DE_BLOCOS * TAMANHO_HASH];
+        this.prontas = new AtomicLongArray((QUANTIDADE_DE_BLOCOS + 63) / 64);
+        this.pendentes = new AtomicInteger(QUANTIDADE_DE_BLOCOS);
+        this.raiz = QUANTIDADE_DE_BLOCOS == 0 ? calcularRaiz(folhas, 0) : null;
+        this.falhou = false;
+    }
+
+    boolean isAtual(long tamanhoArquivo, long dataDeModificacao, ExecutorService trabalhadores) {
+        return TAMANHO_ARQUIVO == tamanhoArquivo && DATA_DE_MODIFICACAO == dataDeModificacao
+                && (raiz != null || (this.trabalhadores == trabalhadores && !falhou));
+    }
+
+    void calcular(ExecutorService trabalhadores, final Selector seletor) throws IOException {
+        this.trabalhadores = trabalhadores;
+
+        if (QUANTIDADE_DE_BLOCOS == 0) {
+            return;
+        }
+
+        final FileChannel canal = new FileInputStream(CAMINHO).getChannel();
+
+        try {
+            for (int i = 0; i < QUANTIDADE_DE_BLOCOS; i++) {
+                final int bloco = i;
+
+                trabalhadores.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        calcularBloco(canal, bloco, seletor);
+                    }
+                });
+            }
+        } catch (RejectedExecutionException ex) {
+            falhou = true;
+            canal.close();
+        }
+    }
+
+    boolean isFolhaPronta(int bloco) {
+        return bloco >= 0 && bloco < QUANTIDADE_DE_BLOCOS && (prontas.get(bloco >>> 6) & (1L << bloco)) != 0;
+    }
+
+    void getFolha(int bloco, ByteBuffer destino) {
+        destino.put(folhas, bloco * TAMANHO_HASH, TAMANHO_HASH);
+    }
+
+    byte[] getRaiz() {
+        return raiz;
+    }
+
+    static byte[] calcularFolha(ByteBuffer dados) {
+        MessageDigest resumo = RESUMOS.get();
+
+        resumo.reset();
+        resumo.update(PREFIXO_DA_FOLHA);
+        resumo.update(dados);
+
+        return resumo.digest();
+    }
+
+    static byte[] calcularRaiz(byte[] folhas, int quantidade) {
+        MessageDigest resumo = RESUMOS.get();
+
+        if (quantidade == 0) {
+            resumo.reset();
+            return resumo.digest();
+        }
+
+        byte[] nivel = new byte[quantidade * TAMANHO_HASH];
+        System.arraycopy(folhas, 0, nivel, 0, nivel.length);
+
+        while (quantidade > 1) {
+            int nos = (quantidade + 1) / 2;
+
+            for (int i = 0; i < nos; i++) {
+                if ((2 * i) + 1 < quantidade) {
+                    resumo.reset();
+                    resumo.update(PREFIXO_DO_NO);
+                    resumo.update(nivel, 2 * i * TAMANHO_HASH, 2 * TAMANHO_HASH);
+                    System.arraycopy(resumo.digest(), 0, nivel, i * TAMANHO_HASH, TAMANHO_HASH);
+                } else {
+                    System.arraycopy(nivel, 2 * i * TAMANHO_HASH, nivel, i * TAMANHO_HASH, TAMANHO_HASH);
+                }
+            }
+
+            quantidade = nos;
+        }
+
+        byte[] raiz = new byte[TAMANHO_HASH];
+        System.arraycopy(nivel, 0, raiz, 0, TAMANHO_HASH);
+
+        return raiz;
+    }
+
+    static byte[] calcularFolha(FileChannel canal, long posicao, int tamanho) throws IOException {
+        ByteBuffer leitura = LEITURAS.get();
+
+        if (leitura == null || leitura.capacity() < tamanho) {
+            leitura = ByteBuffer.allocateDirect(tamanho);
+            LEITURAS.set(leitura);
+        }
+
+        leitura.clear();
+        leitura.limit(tamanho);
+        while (leitura.hasRemaining()) {
+            if (canal.read(leitura, posicao + leitura.position()) < 0) {
+                throw new IOException("Fim inesperado do arquivo.");
+            }
+        }
+        leitura.flip();
+
+        return calcularFolha(leitura);
+    }
+
+    private void calcularBloco(FileChannel canal, int bloco, Selector seletor) {
+        long posicao = (long) bloco * TAMANHO_DO_BLOCO;
+
+        try {
+            byte[] folha = calcularFolha(canal, posicao, (int) Math.min(TAMANHO_DO_BLOCO, TAMANHO_ARQUIVO - posicao));
+
+            System.arraycopy(folha, 0, folhas, bloco * TAMANHO_HASH, TAMANHO_HASH);
+            marcarPronta(bloco);
+        } catch (IOException ex) {
+            if (!falhou) {
+                falhou = true;
+                System.err.println("Ocorreu um erro no cálculo dos hashes.");
+            }
+        }
+
+        if (pendentes.decrementAndGet() == 0) {
+            if (!falhou) {
+                raiz = calcularRaiz(folhas, QUANTIDADE_DE_BLOCOS);
+            }
+
+            try {
+                canal.close();
+            } catch (IOException ex) {
+            }
+        }
+
+        seletor.wakeup();
+    }
+
+    private void marcarPronta(int bloco) {
+        long palavra;
+
+        do {
+            palavra = prontas.get(bloco >>> 6);
+        } while (!prontas.compareAndSet(bloco >>> 6, palavra, palavra | (1L << bloco)));
+    }
+
+}
@@ -0,0 +1,73 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+class Assinaturas extends Pacote {
+
+    static final int TAMANHO_CABECALHO = Byte.BYTES+(4*Integer.BYTES);
+    static final int TAMANHO_PENDENTE = Byte.BYTES+(2*Integer.BYTES);
+    static final int ASSINATURAS_POR_PACOTE = (Pacote.TAMANHO_MAX_DADOS-TAMANHO_CABECALHO)/TabelaDeAssinaturas.TAMANHO_DA_ASSINATURA;
+
+    Assinaturas(InetAddress hostname, int porta) {
+        super(hostname, porta, Flag.ASSINATURAS.getByte());
+    }
+
+    static void set(ByteBuffer pacote, TabelaDeAssinaturas tabela, int indice) {
+        int quantidade = Math.min(ASSINATURAS_POR_PACOTE, tabela.getQuantidade() - indice);
+
+        pacote.put(Flag.ASSINATURAS.getByte());
+        pacote.putInt(tabela.getToken());
+        pacote.putInt(tabela.getTamanhoDoBloco());
+        pacote.putInt(tabela.getQuantidade());
+        pacote.putInt(indice);
+        tabela.putAssinaturas(pacote, indice, quantidade);
+    }
+
+    static void setPendente(ByteBuffer pacote, int token, int faltando) {
+        pacote.put(Flag.ASSINATURAS.getByte());
+        pacote.putInt(token);
+        pacote.putInt(faltando);
+    }
+
+    static boolean isPendente(byte[] dados, int tamanho, int token) {
+        return tamanho == TAMANHO_PENDENTE && Pacote.isAssinaturas(dados) && ByteBuffer.wrap(dados).getInt(Byte.BYTES) == token;
+    }
+
+    static int getFaltando(byte[] dados) {
+        return ByteBuffer.wrap(dados).getInt(Byte.BYTES+Integer.BYTES);
+    }
+
+    static int getToken(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES);
+    }
+
+    static int getTamanhoDoBloco(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+Integer.BYTES);
+    }
+
+    static int getQuantidade(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+(2*Integer.BYTES));
+    }
+
+    static int getIndice(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+(3*Integer.BYTES));
+    }
+
+}
@@ -0,0 +1,237 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class BlocosComprimidos {
+
+    private static final byte[] INCOMPRESSIVEL = new byte[0];
+
+    private final ArquivoMapeado ARQUIVO;
+    private final int TAMANHO_DADOS;
+    private final int PACOTES_POR_BUFFER;
+    private final ExecutorService TRABALHADORES;
+    private final Selector SELETOR;
+    private final CacheDeBlocos CACHE;
+    private final String PREFIXO;
+
+    private AtomicReferenceArray<Bloco> blocos;
+    private int proximoBloco;
+    private volatile boolean ativo;
+
+    BlocosComprimidos(ArquivoMapeado arquivo, int tamanhoDados, int pacotesPorBuffer, int quantidadeDeBuffers,
+            ExecutorService trabalhadores, Selector seletor, CacheDeBlocos cache, String prefixo) {
+        this.ARQUIVO = arquivo;
+        this.TAMANHO_DADOS = tamanhoDados;
+        this.PACOTES_POR_BUFFER = pacotesPorBuffer;
+        this.TRABALHADORES = trabalhadores;
+        this.SELETOR = seletor;
+        this.CACHE = cache;
+        this.PREFIXO = prefixo;
+        this.blocos = new AtomicReferenceArray<Bloco>(quantidadeDeBuffers + 1);
+        this.proximoBloco = 0;
+        this.ativo = true;
+    }
+
+    void preparar(int inicio, int fim) {
+        proximoBloco = Math.max(proximoBloco, inicio - (inicio % PACOTES_POR_BUFFER));
+
+        while (ativo && proximoBloco < fim) {
+            final int key = proximoBloco;
+
+            try {
+                TRABALHADORES.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        comprimir(key);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                return;
+            }
+
+            proximoBloco += PACOTES_POR_BUFFER;
+        }
+    }
+
+    boolean isPronto(int sequencia) {
+        return getBloco(sequencia) != null;
+    }
+
+    boolean isComprimido(int sequencia) {
+        Bloco bloco = getBloco(sequencia);
+
+        return bloco != null && bloco.dados != null;
+    }
+
+    int getSequenciaEnviada(int sequencia) {
+        Bloco bloco = getBloco(sequencia);
+
+        if (bloco == null || bloco.dados == null) {
+            return sequencia;
+        }
+
+        return Math.min(sequencia, bloco.key + bloco.pacotes - 1);
+    }
+
+    int getProximaSequencia(int sequencia) {
+        Bloco bloco = getBloco(sequencia);
+
+        if (bloco == null || bloco.dados == null || sequencia < bloco.key + bloco.pacotes) {
+            return sequencia;
+        }
+
+        return bloco.key + PACOTES_POR_BUFFER;
+    }
+
+    byte getFlag(int sequencia) {
+        return isComprimido(sequencia) ? Flag.DADOS_COMPRIMIDOS.getByte() : Flag.DADOS.getByte();
+    }
+
+    int getTamanhoDados(int sequencia) {
+        Bloco bloco = getBloco(sequencia);
+
+        if (bloco == null || bloco.dados == null) {
+            return ARQUIVO.getTamanhoDados(sequencia);
+        }
+
+        return Math.max(0, Math.min(TAMANHO_DADOS, bloco.dados.length - (sequencia - bloco.key) * TAMANHO_DADOS));
+    }
+
+    boolean get(int sequencia, ByteBuffer destino) throws IOException {
+        Bloco bloco = getBloco(sequencia);
+
+        if (bloco == null) {
+            return false;
+        }
+
+        if (bloco.dados == null) {
+            ARQUIVO.get(sequencia, destino);
+            return true;
+        }
+
+        int posicao = (sequencia - bloco.key) * TAMANHO_DADOS;
+        if (posicao >= bloco.dados.length) {
+            return false;
+        }
+
+        destino.put(bloco.dados, posicao, Math.min(TAMANHO_DADOS, bloco.dados.length - posicao));
+
+        return true;
+    }
+
+    void fechar() {
+        ativo = false;
+    }
+
+    private Bloco getBloco(int sequencia) {
+        int key = sequencia - (sequencia % PACOTES_POR_BUFFER);
+        Bloco bloco = blocos.get((key / PACOTES_POR_BUFFER) % blocos.length());
+
+        return bloco != null && bloco.key == key ? bloco : null;
+    }
+
+    private void comprimir(int key) {
+        if (!ativo) {
+            return;
+        }
+
+        int pacotes = Math.min(PACOTES_POR_BUFFER, ARQUIVO.getQuantidadeDePacotes() - key);
+        byte[] comprimidos = CACHE == null ? null : CACHE.get(PREFIXO + key);
+
+        if (comprimidos == null) {
+            try {
+                comprimidos = codificar(key, pacotes);
+            } catch (IOException ex) {
+                if (ativo) {
+                    System.err.println("Ocorreu um erro na compressão.");
+                }
+                return;
+            }
+
+            if (CACHE != null) {
+                CACHE.put(PREFIXO + key, comprimidos);
+            }
+        }
+
+        if (comprimidos == INCOMPRESSIVEL) {
+            comprimidos = null;
+        }
+
+        int quantidade = comprimidos == null ? pacotes : (comprimidos.length + TAMANHO_DADOS - 1) / TAMANHO_DADOS;
+        Bloco bloco = new Bloco(key, quantidade, comprimidos);
+        int posicao = (key / PACOTES_POR_BUFFER) % blocos.length();
+        Bloco anterior;
+
+        do {
+            anterior = blocos.get(posicao);
+            if (anterior != null && anterior.key >= key) {
+                return;
+            }
+        } while (!blocos.compareAndSet(posicao, anterior, bloco));
+
+        SELETOR.wakeup();
+    }
+
+    private byte[] codificar(int key, int pacotes) throws IOException {
+        if (pacotes <= 1) {
+            return INCOMPRESSIVEL;
+        }
+
+        int tamanho = (int) Math.min((long) pacotes * TAMANHO_DADOS, ARQUIVO.getTamanho() - (long) key * TAMANHO_DADOS);
+        int limite = (pacotes - 1) * TAMANHO_DADOS;
+        byte[] entrada = Compressao.getEntrada(tamanho);
+        byte[] saida = Compressao.getSaida(limite);
+        ByteBuffer bruto = ByteBuffer.wrap(entrada);
+
+        for (int sequencia = key; sequencia < key + pacotes; sequencia++) {
+            ARQUIVO.get(sequencia, bruto);
+        }
+
+        int bytes = Compressao.comprimir(entrada, tamanho, saida, limite);
+        if (bytes > 0 && bytes % TAMANHO_DADOS == 0 && bytes < limite) {
+            saida[bytes++] = 0;
+        }
+        if (bytes <= 0 || bytes % TAMANHO_DADOS == 0) {
+            return INCOMPRESSIVEL;
+        }
+
+        return Arrays.copyOf(saida, bytes);
+    }
+
+    private static class Bloco {
+
+        private final int key;
+        private final int pacotes;
+        private final byte[] dados;
+
+        private Bloco(int key, int pacotes, byte[] dados) {
+            this.key = key;
+            this.pacotes = pacotes;
+            this.dados = dados;
+        }
+
+    }
+
+}
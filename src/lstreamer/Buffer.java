@@ -16,36 +16,100 @@ limitations under the License.
 
 package lstreamer;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 class Buffer {
 
-    private final int TAMANHO;
+    private final int TAMANHO_MAXIMO;
+    private final int TAMANHO_DADOS;
+    private final RodaDeTemporizadores<Buffer> TEMPORIZADORES;
+    private final Temporizador<Buffer> TEMPORIZADOR;
 
-    private List<Dados> pacotes;
-    private int quantidadePacotesNaLista;
-    private long timeout;
+    private ByteBuffer dados;
+    private int[] tamanhos;
+    private long[] recebidos;
+    private volatile int key;
+    private int tamanho;
+    private volatile int quantidadePacotesNaLista;
     private long tempoParaTimeout;
+    private long prazoDoTimeout;
     private int IdConexao;
-    private InetAddress hostname;
-    private int porta;
+    private ByteBuffer reparos;
+    private long[] reparosRecebidos;
+    private int[] recebidosNoGrupo;
+    private int grupos;
+    private int tamanhoDoUltimo;
+    private volatile int pacotesRecuperados;
+    private volatile boolean comprimido;
+    private boolean descomprimindo;
+    private boolean verificacao;
+    private volatile boolean verificado;
+    private boolean verificando;
+    private byte[] hashEsperado;
+    private boolean temHashEsperado;
+    private byte[] hashCalculado;
+    private boolean temHashCalculado;
 
-    Buffer(int tamanho) throws UnknownHostException {
-        this.TAMANHO = tamanho;
+    Buffer(int tamanhoMaximo, int tamanhoDados, RodaDeTemporizadores<Buffer> temporizadores) {
+        this.TAMANHO_MAXIMO = tamanhoMaximo;
+        this.TAMANHO_DADOS = tamanhoDados;
+        this.TEMPORIZADORES = temporizadores;
+        this.TEMPORIZADOR = new Temporizador<Buffer>(this);
+        this.dados = ByteBuffer.allocateDirect(tamanhoMaximo * tamanhoDados);
+        this.tamanhos = new int[tamanhoMaximo];
+        this.recebidos = new long[(tamanhoMaximo + 63) / 64];
+        this.key = -1;
+        this.tamanho = 0;
         this.quantidadePacotesNaLista = 0;
-        this.pacotes = new ArrayList<Dados>();
         this.tempoParaTimeout = 3000;
+        this.prazoDoTimeout = 0;
+        this.grupos = 0;
+        this.tamanhoDoUltimo = tamanhoDados;
+        this.pacotesRecuperados = 0;
+        this.comprimido = false;
+        this.descomprimindo = false;
+        this.verificacao = false;
+        this.verificado = false;
+        this.verificando = false;
+    }
+
+    ByteBuffer getDados() {
+        dados.limit(dados.capacity());
+        dados.position(0);
+        dados.limit((tamanho - 1) * TAMANHO_DADOS + tamanhos[tamanho - 1]);
+
+        return dados;
+    }
+
+    synchronized ByteBuffer getDados(int inicio, int fim) {
+        ByteBuffer trecho = dados.duplicate();
+
+        trecho.limit(fim);
+        trecho.position(inicio);
 
-        for (int i = 0; i < TAMANHO; i++) {
-            this.pacotes.add(null);
+        return trecho;
+    }
+
+    synchronized int getBytesContiguos() {
+        int bytes = 0;
+        int indice = 0;
+
+        while (indice < tamanho && isRecebido(indice)) {
+            bytes += tamanhos[indice];
+            indice++;
         }
+
+        if (indice < tamanho) {
+            bytes += tamanhos[indice];
+        }
+
+        return bytes;
     }
 
-    List<Dados> getPacotes() {
-        return pacotes;
+    int getKey() {
+        return key;
     }
 
     int getQuantidadeDePacotesNoBuffer() {
@@ -53,82 +117,430 @@ class Buffer {
     }
 
     int getTamanho() {
-        return TAMANHO;
+        return tamanho;
     }
 
     int getIdConexao() {
         return IdConexao;
     }
-    
-    InetAddress getHostname() {
-        return hostname;
+
+    int getPacotesRecuperados() {
+        return pacotesRecuperados;
     }
 
-    int getPorta() {
-        return porta;
+    boolean isLivre() {
+        return key < 0;
     }
-    
-    List<Integer> getPacotesPerdidos(int key) {
-        List<Integer> pacotesPerdidos = new ArrayList<Integer>();
-        for (int i = 0; i < pacotes.size(); i++) {
-            if (pacotes.get(i) == null) {
-                pacotesPerdidos.add(key + i);
-            }
+
+    synchronized boolean putPacotesPerdidos(ByteBuffer relatorio, int key) {
+        if (this.key != key) {
+            return true;
         }
 
-        return pacotesPerdidos;
+        return Relatorio.putPacotesPerdidos(relatorio, key, recebidos, tamanho);
     }
 
-    void setTimeout(long timeout) {
+    synchronized void setTimeout(long timeout) {
         if (timeout < 0)
             return;
         
         this.tempoParaTimeout = timeout;
+
+        long prazo = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (TEMPORIZADOR.isAgendado() && prazo < prazoDoTimeout) {
+            prazoDoTimeout = prazo;
+            TEMPORIZADORES.agendar(TEMPORIZADOR, prazo);
+        }
     }
 
     void iniciarTimeout() {
-        this.timeout = System.currentTimeMillis() + tempoParaTimeout;
-    }
-    
-    boolean isTimeouted() {
-        return (timeout <= System.currentTimeMillis());
+        prazoDoTimeout = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tempoParaTimeout);
+        TEMPORIZADORES.agendar(TEMPORIZADOR, prazoDoTimeout);
     }
 
     boolean isCheio() {
-        return quantidadePacotesNaLista == TAMANHO;
+        return tamanho > 0 && quantidadePacotesNaLista == tamanho;
+    }
+
+    boolean isComprimido() {
+        return comprimido;
+    }
+
+    boolean isPronto() {
+        return isCheio() && !comprimido && (!verificacao || verificado);
+    }
+
+    void setVerificacao(boolean verificacao) {
+        this.verificacao = verificacao;
+
+        if (verificacao && hashEsperado == null) {
+            hashEsperado = new byte[ArvoreDeHashes.TAMANHO_HASH];
+            hashCalculado = new byte[ArvoreDeHashes.TAMANHO_HASH];
+        }
+    }
+
+    synchronized boolean isAguardandoHash() {
+        return verificacao && isCheio() && !comprimido && !verificado && !temHashEsperado;
+    }
+
+    synchronized boolean set(int key, int tamanho, int index, int idConexao, ByteBuffer pacote) {
+        if (!ocupar(key, tamanho, idConexao)) {
+            return false;
+        }
+
+        if (quantidadePacotesNaLista >= this.tamanho || index >= this.tamanho || index < 0) {
+            return false;
+        }
+
+        if (isRecebido(index)) {
+            return false;
+        }
+
+        int tamanhoDados = pacote.remaining();
+        if (tamanhoDados > TAMANHO_DADOS) {
+            return false;
+        }
+
+        dados.limit(dados.capacity());
+        dados.position(index * TAMANHO_DADOS);
+        dados.put(pacote);
+
+        marcarRecebido(index, tamanhoDados);
+
+        if (grupos > 0) {
+            recuperar(index % grupos);
+        }
+
+        return true;
+    }
+
+    synchronized boolean setComprimido(int key, int tamanho, int index, int idConexao, ByteBuffer pacote) {
+        int tamanhoDados = pacote.remaining();
+
+        if (!set(key, tamanho, index, idConexao, pacote)) {
+            return false;
+        }
+
+        comprimido = true;
+        if (tamanhoDados < TAMANHO_DADOS) {
+            this.tamanho = index + 1;
+        }
+
+        return true;
+    }
+
+    synchronized boolean iniciarDescompressao() {
+        if (!comprimido || descomprimindo || !isCheio()) {
+            return false;
+        }
+
+        descomprimindo = true;
+
+        return true;
+    }
+
+    boolean descomprimir(int key, int tamanhoBruto) {
+        ByteBuffer comprimidos;
+
+        synchronized (this) {
+            if (this.key != key || !descomprimindo) {
+                return false;
+            }
+
+            comprimidos = getDados().duplicate();
+        }
+
+        byte[] bruto = Compressao.descomprimir(comprimidos, tamanhoBruto);
+
+        synchronized (this) {
+            if (this.key != key || !descomprimindo) {
+                return false;
+            }
+
+            descomprimindo = false;
+
+            if (bruto == null) {
+                descartarPacotes();
+                comprimido = false;
+                iniciarTimeout();
+                return false;
+            }
+
+            dados.clear();
+            dados.put(bruto, 0, tamanhoBruto);
+
+            tamanho = (tamanhoBruto + TAMANHO_DADOS - 1) / TAMANHO_DADOS;
+            for (int i = 0; i < tamanho; i++) {
+                tamanhos[i] = Math.min(TAMANHO_DADOS, tamanhoBruto - (i * TAMANHO_DADOS));
+                recebidos[i >>> 6] |= 1L << i;
+            }
+            quantidadePacotesNaLista = tamanho;
+            comprimido = false;
+        }
+
+        return true;
     }
 
-    synchronized boolean set(int index, Dados pacote) {
-        if (quantidadePacotesNaLista >= TAMANHO || index >= TAMANHO || index < 0) {
+    synchronized boolean setHash(int key, int tamanho, int idConexao, ByteBuffer pacote) {
+        if (!verificacao || !ocupar(key, tamanho, idConexao) || temHashEsperado) {
             return false;
         }
 
-        if (pacotes.get(index) != null) {
+        HashDoBloco.getHash(pacote, hashEsperado);
+        temHashEsperado = true;
+
+        return true;
+    }
+
+    synchronized boolean iniciarVerificacao() {
+        if (!verificacao || verificando || verificado || temHashCalculado || comprimido || !isCheio()) {
             return false;
         }
 
-        if (quantidadePacotesNaLista == 0) {
+        verificando = true;
+
+        return true;
+    }
+
+    boolean calcularHash(int key) {
+        ByteBuffer conteudo;
+
+        synchronized (this) {
+            if (this.key != key || !verificando) {
+                return false;
+            }
+
+            conteudo = getDados().duplicate();
+        }
+
+        byte[] hash = ArvoreDeHashes.calcularFolha(conteudo);
+
+        synchronized (this) {
+            if (this.key != key || !verificando) {
+                return false;
+            }
+
+            System.arraycopy(hash, 0, hashCalculado, 0, hash.length);
+            temHashCalculado = true;
+            verificando = false;
+        }
+
+        return true;
+    }
+
+    synchronized int conferirHash(int key, byte[] folhas, int posicao) {
+        if (this.key != key || verificado || !temHashCalculado || !temHashEsperado) {
+            return 0;
+        }
+
+        if (!Arrays.equals(hashCalculado, hashEsperado)) {
+            descartarPacotes();
             iniciarTimeout();
-            hostname = pacote.getHostname();
-            porta = pacote.getPorta();
-            IdConexao = pacote.getIdConexao();
+            return -1;
         }
 
-        pacotes.set(index, pacote);
-        quantidadePacotesNaLista++;
+        System.arraycopy(hashCalculado, 0, folhas, posicao, hashCalculado.length);
+        verificado = true;
+
+        return 1;
+    }
+
+    synchronized boolean setParcial(int key, int tamanho, int index, int idConexao, ByteBuffer pacote) {
+        if (!ocupar(key, tamanho, idConexao)) {
+            return false;
+        }
+
+        if (index >= this.tamanho || index < 0 || isRecebido(index)) {
+            return false;
+        }
+
+        int tamanhoDados = pacote.remaining();
+        if (tamanhoDados > TAMANHO_DADOS || tamanhoDados <= tamanhos[index]) {
+            return false;
+        }
+
+        dados.limit(dados.capacity());
+        dados.position(index * TAMANHO_DADOS);
+        dados.put(pacote);
+        tamanhos[index] = tamanhoDados;
 
         return true;
     }
 
-    boolean remove(int index) {
-        if (pacotes.isEmpty()) {
+    synchronized boolean limitar(int key, int tamanho, int tamanhoDoUltimo) {
+        if (this.key != key || tamanho < 1 || tamanho > this.tamanho) {
+            return false;
+        }
+
+        boolean alterado = tamanho < this.tamanho;
+        this.tamanho = tamanho;
+
+        if (!isRecebido(tamanho - 1) && tamanhos[tamanho - 1] == tamanhoDoUltimo) {
+            marcarRecebido(tamanho - 1, tamanhoDoUltimo);
+            alterado = true;
+        }
+
+        return alterado;
+    }
+
+    synchronized boolean setReparo(int key, int tamanho, int tamanhoDoUltimo, int indice, int grupos, int idConexao, ByteBuffer pacote) {
+        if (grupos < 1 || grupos > Reparo.getMaximoDeGrupos(tamanho) || indice >= grupos
+                || tamanhoDoUltimo < 1 || tamanhoDoUltimo > TAMANHO_DADOS) {
+            return false;
+        }
+
+        if (!ocupar(key, tamanho, idConexao) || this.tamanho != tamanho) {
+            return false;
+        }
+
+        if (this.grupos == 0) {
+            iniciarReparos(grupos);
+            this.tamanhoDoUltimo = tamanhoDoUltimo;
+        } else if (this.grupos != grupos || this.tamanhoDoUltimo != tamanhoDoUltimo) {
+            return false;
+        }
+
+        if (isCheio() || pacote.remaining() != TAMANHO_DADOS || isMarcado(reparosRecebidos, indice)) {
             return false;
         }
 
-        pacotes.set(index, null);
-        quantidadePacotesNaLista--;
+        reparos.limit(reparos.capacity());
+        reparos.position(indice * TAMANHO_DADOS);
+        reparos.put(pacote);
+        reparosRecebidos[indice >>> 6] |= 1L << indice;
+
+        recuperar(indice);
 
         return true;
     }
 
+    synchronized void liberar() {
+        descartarPacotes();
+
+        TEMPORIZADORES.cancelar(TEMPORIZADOR);
+        comprimido = false;
+        descomprimindo = false;
+        grupos = 0;
+        tamanhoDoUltimo = TAMANHO_DADOS;
+        tamanho = 0;
+        key = -1;
+    }
+
+    synchronized boolean isRecebido(int key, int index) {
+        return this.key == key && index >= 0 && (index < tamanho ? isRecebido(index) : comprimido);
+    }
+
+    private boolean isRecebido(int index) {
+        return isMarcado(recebidos, index);
+    }
+
+    private boolean ocupar(int key, int tamanho, int idConexao) {
+        if (this.key < 0) {
+            if (tamanho < 1 || tamanho > TAMANHO_MAXIMO) {
+                return false;
+            }
+
+            this.tamanho = tamanho;
+            this.IdConexao = idConexao;
+            this.key = key;
+            iniciarTimeout();
+        } else if (this.key != key) {
+            return false;
+        }
+
+        return true;
+    }
+
+    private void descartarPacotes() {
+        for (int i = 0; i < recebidos.length; i++) {
+            recebidos[i] = 0;
+        }
+
+        for (int i = 0; i < tamanho; i++) {
+            tamanhos[i] = 0;
+        }
+
+        if (grupos > 0) {
+            for (int i = 0; i < reparosRecebidos.length; i++) {
+                reparosRecebidos[i] = 0;
+            }
+
+            for (int i = 0; i < grupos; i++) {
+                recebidosNoGrupo[i] = 0;
+            }
+        }
+
+        quantidadePacotesNaLista = 0;
+        verificado = false;
+        verificando = false;
+        temHashEsperado = false;
+        temHashCalculado = false;
+    }
+
+    private void marcarRecebido(int index, int tamanhoDados) {
+        tamanhos[index] = tamanhoDados;
+        recebidos[index >>> 6] |= 1L << index;
+        quantidadePacotesNaLista++;
+
+        if (grupos > 0) {
+            recebidosNoGrupo[index % grupos]++;
+        }
+    }
+
+    private void iniciarReparos(int grupos) {
+        if (reparos == null) {
+            int maximoDeGrupos = Reparo.getMaximoDeGrupos(TAMANHO_MAXIMO);
+
+            reparos = ByteBuffer.allocateDirect(maximoDeGrupos * TAMANHO_DADOS);
+            reparosRecebidos = new long[(maximoDeGrupos + 63) / 64];
+            recebidosNoGrupo = new int[maximoDeGrupos];
+        }
+
+        this.grupos = grupos;
+
+        for (int i = 0; i < tamanho; i++) {
+            if (isRecebido(i)) {
+                recebidosNoGrupo[i % grupos]++;
+            }
+        }
+    }
+
+    private void recuperar(int grupo) {
+        int tamanhoDoGrupo = (tamanho - grupo + grupos - 1) / grupos;
+
+        if (!isMarcado(reparosRecebidos, grupo) || recebidosNoGrupo[grupo] != tamanhoDoGrupo - 1) {
+            return;
+        }
+
+        int perdido = -1;
+        for (int i = grupo; i < tamanho; i += grupos) {
+            if (!isRecebido(i)) {
+                perdido = i;
+                break;
+            }
+        }
+
+        int posicao = perdido * TAMANHO_DADOS;
+
+        reparos.limit(reparos.capacity());
+        reparos.position(grupo * TAMANHO_DADOS);
+        reparos.limit(reparos.position() + TAMANHO_DADOS);
+        dados.limit(dados.capacity());
+        dados.position(posicao);
+        dados.put(reparos);
+
+        for (int i = grupo; i < tamanho; i += grupos) {
+            if (i != perdido) {
+                Reparo.combinar(dados, posicao, dados, i * TAMANHO_DADOS, tamanhos[i]);
+            }
+        }
+
+        marcarRecebido(perdido, perdido == tamanho - 1 ? tamanhoDoUltimo : TAMANHO_DADOS);
+        pacotesRecuperados++;
+    }
+
+    private static boolean isMarcado(long[] mapa, int indice) {
+        return (mapa[indice >>> 6] & (1L << indice)) != 0;
+    }
+
 }
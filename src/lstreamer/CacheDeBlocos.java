@@ -0,0 +1,104 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+class CacheDeBlocos {
+
+    private static final int CUSTO_POR_BLOCO = 64;
+
+    private final LinkedHashMap<String, byte[]> blocos;
+    private long capacidade;
+    private long ocupacao;
+    private long acertos;
+    private long falhas;
+
+    CacheDeBlocos(long capacidade) {
+        this.blocos = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+        this.capacidade = capacidade;
+        this.ocupacao = 0;
+        this.acertos = 0;
+        this.falhas = 0;
+    }
+
+    static String getPrefixo(String caminho, long tamanhoArquivo, long dataDeModificacao, int tamanhoDados, int pacotesPorBuffer) {
+        return caminho + File.pathSeparator + tamanhoArquivo + File.pathSeparator + dataDeModificacao
+                + File.pathSeparator + tamanhoDados + File.pathSeparator + pacotesPorBuffer + File.pathSeparator;
+    }
+
+    synchronized byte[] get(String chave) {
+        byte[] bloco = blocos.get(chave);
+
+        if (bloco == null) {
+            falhas++;
+        } else {
+            acertos++;
+        }
+
+        return bloco;
+    }
+
+    synchronized void put(String chave, byte[] bloco) {
+        long custo = getCusto(bloco);
+
+        if (custo > capacidade) {
+            return;
+        }
+
+        byte[] anterior = blocos.put(chave, bloco);
+        if (anterior != null) {
+            ocupacao -= getCusto(anterior);
+        }
+        ocupacao += custo;
+
+        liberarExcedente();
+    }
+
+    synchronized void setCapacidade(long capacidade) {
+        this.capacidade = capacidade;
+        liberarExcedente();
+    }
+
+    synchronized long getAcertos() {
+        return acertos;
+    }
+
+    synchronized long getFalhas() {
+        return falhas;
+    }
+
+    synchronized long getOcupacao() {
+        return ocupacao;
+    }
+
+    private void liberarExcedente() {
+        Iterator<byte[]> iterador = blocos.values().iterator();
+
+        while (ocupacao > capacidade && iterador.hasNext()) {
+            ocupacao -= getCusto(iterador.next());
+            iterador.remove();
+        }
+    }
+
+    private static long getCusto(byte[] bloco) {
+        return CUSTO_POR_BLOCO + bloco.length;
+    }
+
+}
@@ -0,0 +1,153 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+class Cadenciador {
+
+    private static final long LIMIAR_DE_ESPERA_ATIVA = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long TOLERANCIA_PADRAO = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private double nanosPorByte;
+    private long nanosPorPacote;
+    private int rajada;
+    private int tamanhoPacote;
+    private long tolerancia;
+    private long proximoEnvio;
+
+    Cadenciador() {
+        this.nanosPorByte = 0;
+        this.nanosPorPacote = 0;
+        this.rajada = 0;
+        this.tamanhoPacote = Dados.TAMANHO_MAX;
+        this.tolerancia = 0;
+        this.proximoEnvio = System.nanoTime();
+    }
+
+    Cadenciador(Cadenciador modelo) {
+        this();
+        this.nanosPorByte = modelo.nanosPorByte;
+        this.nanosPorPacote = modelo.nanosPorPacote;
+        this.rajada = modelo.rajada;
+        this.tamanhoPacote = modelo.tamanhoPacote;
+        this.tolerancia = modelo.tolerancia;
+    }
+
+    void setTaxaEmBytes(long bytesPorSegundo) {
+        nanosPorByte = bytesPorSegundo > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) bytesPorSegundo : 0;
+        nanosPorPacote = 0;
+        atualizarTolerancia();
+    }
+
+    void setTaxaEmPacotes(long pacotesPorSegundo) {
+        setIntervalo(pacotesPorSegundo > 0 ? TimeUnit.SECONDS.toNanos(1) / pacotesPorSegundo : 0);
+    }
+
+    void setIntervalo(long nanos) {
+        nanosPorPacote = Math.max(0, nanos);
+        nanosPorByte = 0;
+        atualizarTolerancia();
+    }
+
+    void setRajada(int pacotes) {
+        rajada = Math.max(0, pacotes);
+        atualizarTolerancia();
+    }
+
+    void setTamanhoDoPacote(int bytes) {
+        tamanhoPacote = bytes;
+        atualizarTolerancia();
+    }
+
+    long getTaxaEmBytes() {
+        if (nanosPorByte > 0) {
+            return (long) (TimeUnit.SECONDS.toNanos(1) / nanosPorByte);
+        }
+
+        if (nanosPorPacote > 0) {
+            return TimeUnit.SECONDS.toNanos(1) * tamanhoPacote / nanosPorPacote;
+        }
+
+        return 0;
+    }
+
+    boolean isLimitado() {
+        return nanosPorByte > 0 || nanosPorPacote > 0;
+    }
+
+    long getAtraso() {
+        if (!isLimitado()) {
+            return 0;
+        }
+
+        return Math.max(0, proximoEnvio - tolerancia - System.nanoTime());
+    }
+
+    void consumir(int bytes) {
+        if (!isLimitado()) {
+            return;
+        }
+
+        long agora = System.nanoTime();
+        if (proximoEnvio - agora < 0) {
+            proximoEnvio = agora;
+        }
+
+        proximoEnvio += getCusto(bytes);
+    }
+
+    void aguardar(int bytes) throws InterruptedException {
+        esperar(getAtraso());
+        consumir(bytes);
+    }
+
+    static void esperar(long nanos) throws InterruptedException {
+        long limite = System.nanoTime() + nanos;
+        long restante = nanos;
+
+        while (restante > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (restante > LIMIAR_DE_ESPERA_ATIVA) {
+                LockSupport.parkNanos(restante - LIMIAR_DE_ESPERA_ATIVA);
+            }
+
+            restante = limite - System.nanoTime();
+        }
+    }
+
+    private long getCusto(int bytes) {
+        if (nanosPorPacote > 0) {
+            return nanosPorPacote;
+        }
+
+        return (long) (bytes * nanosPorByte);
+    }
+
+    private void atualizarTolerancia() {
+        if (rajada > 0) {
+            tolerancia = (rajada - 1) * getCusto(tamanhoPacote);
+        } else {
+            tolerancia = Math.max(0, TOLERANCIA_PADRAO - getCusto(tamanhoPacote));
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
+import java.util.concurrent.locks.LockSupport;
+
+class CanalDeEnvio extends Thread {
+
+    private static final int CAPACIDADE = 4096;
+
+    private final DatagramChannel CANAL;
+    private final InetSocketAddress DESTINO;
+    private final ArquivoMapeado ARQUIVO;
+    private final BlocosComprimidos BLOCOS;
+    private final int ID_CONEXAO;
+    private final Selector SELETOR;
+
+    private ByteBuffer envio;
+    private int[] sequencias;
+    private int[] ecos;
+    private volatile long inicio;
+    private volatile long fim;
+    private volatile boolean aguardando;
+    private volatile boolean cheio;
+    private volatile boolean ativo;
+
+    CanalDeEnvio(InetSocketAddress destino, ArquivoMapeado arquivo, BlocosComprimidos blocos, int idConexao, int tamanhoDados,
+            Selector seletor) throws IOException {
+        this.CANAL = DatagramChannel.open();
+        this.DESTINO = destino;
+        this.ARQUIVO = arquivo;
+        this.BLOCOS = blocos;
+        this.ID_CONEXAO = idConexao;
+        this.SELETOR = seletor;
+        this.envio = ByteBuffer.allocateDirect(Dados.TAMANHO_CABECALHO + tamanhoDados);
+        this.sequencias = new int[CAPACIDADE];
+        this.ecos = new int[CAPACIDADE];
+        this.inicio = 0;
+        this.fim = 0;
+        this.aguardando = false;
+        this.cheio = false;
+        this.ativo = true;
+        setDaemon(true);
+    }
+
+    boolean isCheio() {
+        return fim - inicio >= CAPACIDADE;
+    }
+
+    boolean enfileirar(int sequencia, int eco) {
+        long posicao = fim;
+
+        if (posicao - inicio >= CAPACIDADE) {
+            cheio = true;
+            if (posicao - inicio >= CAPACIDADE) {
+                return false;
+            }
+            cheio = false;
+        }
+
+        sequencias[(int) (posicao & (CAPACIDADE - 1))] = sequencia;
+        ecos[(int) (posicao & (CAPACIDADE - 1))] = eco;
+        fim = posicao + 1;
+
+        if (aguardando) {
+            LockSupport.unpark(this);
+        }
+
+        return true;
+    }
+
+    void fechar() {
+        ativo = false;
+        LockSupport.unpark(this);
+
+        try {
+            CANAL.close();
+            join(100);
+        } catch (IOException ex) {
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (ativo) {
+                long posicao = inicio;
+
+                if (posicao == fim) {
+                    aguardando = true;
+                    if (posicao == fim && ativo) {
+                        LockSupport.park(this);
+                    }
+                    aguardando = false;
+                    continue;
+                }
+
+                int sequencia = sequencias[(int) (posicao & (CAPACIDADE - 1))];
+                int eco = ecos[(int) (posicao & (CAPACIDADE - 1))];
+                inicio = posicao + 1;
+
+                if (cheio) {
+                    cheio = false;
+                    SELETOR.wakeup();
+                }
+
+                envio.clear();
+                if (BLOCOS == null) {
+                    Dados.setCabecalho(envio, ID_CONEXAO, sequencia, EstimadorDeRtt.getInstante(System.nanoTime()), eco);
+                    ARQUIVO.get(sequencia, envio);
+                } else {
+                    Dados.setCabecalho(envio, BLOCOS.getFlag(sequencia), ID_CONEXAO, sequencia,
+                            EstimadorDeRtt.getInstante(System.nanoTime()), eco);
+                    if (!BLOCOS.get(sequencia, envio)) {
+                        continue;
+                    }
+                }
+                envio.flip();
+                CANAL.send(envio, DESTINO);
+            }
+        } catch (IOException ex) {
+            if (ativo) {
+                System.err.println("Ocorreu um erro no envio.");
+            }
+        } catch (RuntimeException ex) {
+            if (ativo) {
+                throw ex;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+class Compressao {
+
+    private static final ThreadLocal<Deflater> COMPRESSORES = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> DESCOMPRESSORES = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> ENTRADAS = new ThreadLocal<byte[]>();
+    private static final ThreadLocal<byte[]> SAIDAS = new ThreadLocal<byte[]>();
+
+    static byte[] getEntrada(int tamanho) {
+        return getArea(ENTRADAS, tamanho);
+    }
+
+    static byte[] getSaida(int tamanho) {
+        return getArea(SAIDAS, tamanho);
+    }
+
+    static int comprimir(byte[] entrada, int tamanho, byte[] saida, int limite) {
+        Deflater compressor = COMPRESSORES.get();
+
+        compressor.reset();
+        compressor.setInput(entrada, 0, tamanho);
+        compressor.finish();
+
+        int bytes = 0;
+        while (!compressor.finished() && bytes < limite) {
+            bytes += compressor.deflate(saida, bytes, limite - bytes);
+        }
+
+        return compressor.finished() ? bytes : -1;
+    }
+
+    static byte[] descomprimir(ByteBuffer comprimidos, int tamanho) {
+        Inflater descompressor = DESCOMPRESSORES.get();
+        byte[] entrada = getEntrada(comprimidos.remaining());
+        byte[] saida = getSaida(tamanho);
+        int bytesComprimidos = comprimidos.remaining();
+
+        comprimidos.get(entrada, 0, bytesComprimidos);
+        descompressor.reset();
+        descompressor.setInput(entrada, 0, bytesComprimidos);
+
+        try {
+            int bytes = 0;
+            while (!descompressor.finished() && bytes < tamanho) {
+                int lidos = descompressor.inflate(saida, bytes, tamanho - bytes);
+                if (lidos == 0 && (descompressor.needsInput() || descompressor.needsDictionary())) {
+                    return null;
+                }
+                bytes += lidos;
+            }
+
+            return descompressor.finished() && bytes == tamanho ? saida : null;
+        } catch (DataFormatException ex) {
+            return null;
+        }
+    }
+
+    private static byte[] getArea(ThreadLocal<byte[]> areas, int tamanho) {
+        byte[] area = areas.get();
+
+        if (area == null || area.length < tamanho) {
+            area = new byte[tamanho];
+            areas.set(area);
+        }
+
+        return area;
+    }
+
+}
@@ -0,0 +1,97 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import java.util.concurrent.TimeUnit;
+
+public class ControleAIMD implements ControleDeCongestionamento {
+
+    private static final long RTT_INICIAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int JANELA_INICIAL = 10;
+    private static final int JANELA_MINIMA = 2;
+    private static final double GANHO_PARTIDA_LENTA = 2.0;
+    private static final double GANHO_PREVENCAO = 1.2;
+
+    private int tamanhoPacote;
+    private long janela;
+    private long limiar;
+    private long srtt;
+    private long fimRecuperacao;
+
+    /**
+     * Controle de congestionamento por aumento aditivo e diminuição
+     * multiplicativa.
+     *
+     * Mantém uma janela de congestionamento em bytes que dobra a cada rodada
+     * até a primeira perda e, depois disso, cresce um pacote por rodada. Cada
+     * perda reduz a janela pela metade, no máximo uma vez por tempo de ida e
+     * volta. A taxa de envio é a janela dividida pelo tempo de ida e volta
+     * suavizado. É indicado para enlaces em que a perda de pacotes é sinal de
+     * congestionamento.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     */
+    public ControleAIMD() {
+        iniciar(Pacote.TAMANHO_MAX_DADOS);
+    }
+
+    @Override
+    public final void iniciar(int tamanhoDoPacote) {
+        this.tamanhoPacote = tamanhoDoPacote;
+        this.janela = (long) JANELA_INICIAL * tamanhoDoPacote;
+        this.limiar = Long.MAX_VALUE;
+        this.srtt = 0;
+        this.fimRecuperacao = System.nanoTime();
+    }
+
+    @Override
+    public long getTaxa() {
+        long rtt = srtt > 0 ? srtt : RTT_INICIAL;
+        double ganho = janela < limiar ? GANHO_PARTIDA_LENTA : GANHO_PREVENCAO;
+
+        return Math.max(1, (long) (ganho * janela * TimeUnit.SECONDS.toNanos(1) / rtt));
+    }
+
+    @Override
+    public void aoConfirmar(long bytesEntregues, long rtt, long taxaDeEntrega) {
+        if (rtt > 0) {
+            srtt = srtt == 0 ? rtt : srtt + (rtt - srtt) / 8;
+        }
+
+        if (janela < limiar) {
+            janela += Math.min(bytesEntregues, janela);
+        } else {
+            janela += Math.max(1, tamanhoPacote * bytesEntregues / janela);
+        }
+    }
+
+    @Override
+    public void aoPerder(long bytesPerdidos) {
+        long agora = System.nanoTime();
+
+        if (agora - fimRecuperacao < 0) {
+            return;
+        }
+
+        limiar = Math.max(janela / 2, (long) JANELA_MINIMA * tamanhoPacote);
+        janela = limiar;
+        fimRecuperacao = agora + (srtt > 0 ? srtt : RTT_INICIAL);
+    }
+
+}
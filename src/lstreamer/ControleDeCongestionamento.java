@@ -0,0 +1,83 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+public interface ControleDeCongestionamento {
+
+    /**
+     * Prepara o controle para uma nova sessão.
+     *
+     * É chamado uma única vez, antes de qualquer outro método, assim que o
+     * tamanho dos pacotes da sessão é negociado com o receptor.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param tamanhoDoPacote a quantidade de bytes de dados em cada pacote.
+     *
+     */
+    void iniciar(int tamanhoDoPacote);
+
+    /**
+     * Retorna a taxa de envio, em bytes por segundo, que a sessão deve
+     * utilizar no momento.
+     *
+     * O transmissor consulta esse valor após cada relatório recebido e
+     * ajusta o cadenciamento da sessão de acordo. O valor deve ser sempre
+     * maior que zero.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a taxa de envio em bytes por segundo.
+     *
+     */
+    long getTaxa();
+
+    /**
+     * Informa o término de uma rodada de ida e volta.
+     *
+     * Uma rodada termina quando o receptor confirma ter recebido um pacote
+     * marcado pelo transmissor, ou algum pacote posterior a ele. É chamado
+     * uma vez por rodada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param bytesEntregues a quantidade de bytes entregues ao receptor
+     * durante a rodada.
+     * @param rtt o tempo de ida e volta medido, em nanossegundos, ou zero caso
+     * a amostra não seja confiável por causa de um reenvio.
+     * @param taxaDeEntrega a taxa em que os dados chegaram ao receptor durante
+     * a rodada, em bytes por segundo, ou zero caso não haja amostra.
+     *
+     */
+    void aoConfirmar(long bytesEntregues, long rtt, long taxaDeEntrega);
+
+    /**
+     * Informa que pacotes foram perdidos na rodada atual.
+     *
+     * É chamado antes de aoConfirmar(long, long, long) na mesma rodada,
+     * apenas quando houve perdas.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param bytesPerdidos a quantidade de bytes que não chegaram ao
+     * receptor.
+     *
+     */
+    void aoPerder(long bytesPerdidos);
+
+}
@@ -0,0 +1,169 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import java.util.concurrent.TimeUnit;
+
+public class ControleSondagemDeBanda implements ControleDeCongestionamento {
+
+    private enum Estado {
+        INICIO, DRENAGEM, SONDAGEM
+    }
+
+    private static final double GANHO_INICIO = 2.885;
+    private static final double[] GANHOS_SONDAGEM = {1.25, 0.75, 1, 1, 1, 1, 1, 1};
+    private static final int RODADAS_DO_FILTRO = 10;
+    private static final int RODADAS_SEM_CRESCIMENTO = 3;
+    private static final double CRESCIMENTO_MINIMO = 1.25;
+    private static final double PERDA_MAXIMA = 0.2;
+    private static final double REDUCAO_POR_PERDA = 0.85;
+    private static final long VALIDADE_RTT_MINIMO = TimeUnit.SECONDS.toNanos(10);
+    private static final long RTT_INICIAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int JANELA_INICIAL = 10;
+    private static final int JANELA_MINIMA = 4;
+
+    private final long[] amostrasDeBanda;
+
+    private int tamanhoPacote;
+    private Estado estado;
+    private long rodada;
+    private int fase;
+    private long bandaPlena;
+    private int rodadasSemCrescimento;
+    private long rttMinimo;
+    private long registroRttMinimo;
+    private long bytesPerdidosNaRodada;
+
+    /**
+     * Controle de congestionamento por sondagem de banda e atraso.
+     *
+     * Estima a banda disponível pela maior taxa de entrega observada nas
+     * últimas rodadas e o atraso de propagação pelo menor tempo de ida e volta
+     * dos últimos segundos. A taxa de envio acompanha a banda estimada,
+     * sondando periodicamente por mais banda e drenando a fila formada em
+     * seguida. Perdas isoladas não reduzem a taxa, o que o torna indicado para
+     * enlaces de longa distância com perdas aleatórias.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     */
+    public ControleSondagemDeBanda() {
+        this.amostrasDeBanda = new long[RODADAS_DO_FILTRO];
+        iniciar(Pacote.TAMANHO_MAX_DADOS);
+    }
+
+    @Override
+    public final void iniciar(int tamanhoDoPacote) {
+        for (int i = 0; i < amostrasDeBanda.length; i++) {
+            amostrasDeBanda[i] = 0;
+        }
+
+        this.tamanhoPacote = tamanhoDoPacote;
+        this.estado = Estado.INICIO;
+        this.rodada = 0;
+        this.fase = 0;
+        this.bandaPlena = 0;
+        this.rodadasSemCrescimento = 0;
+        this.rttMinimo = 0;
+        this.bytesPerdidosNaRodada = 0;
+    }
+
+    @Override
+    public long getTaxa() {
+        long rtt = rttMinimo > 0 ? rttMinimo : RTT_INICIAL;
+        long banda = getBanda();
+
+        if (banda == 0) {
+            banda = (long) JANELA_INICIAL * tamanhoPacote * TimeUnit.SECONDS.toNanos(1) / rtt;
+        }
+
+        long minima = (long) JANELA_MINIMA * tamanhoPacote * TimeUnit.SECONDS.toNanos(1) / rtt;
+
+        return Math.max(Math.max(1, minima), (long) (banda * getGanho()));
+    }
+
+    @Override
+    public void aoConfirmar(long bytesEntregues, long rtt, long taxaDeEntrega) {
+        long agora = System.nanoTime();
+
+        if (rtt > 0 && (rttMinimo == 0 || rtt <= rttMinimo || agora - registroRttMinimo > VALIDADE_RTT_MINIMO)) {
+            rttMinimo = rtt;
+            registroRttMinimo = agora;
+        }
+
+        rodada++;
+        amostrasDeBanda[(int) (rodada % RODADAS_DO_FILTRO)] = taxaDeEntrega;
+
+        switch (estado) {
+            case INICIO:
+                long banda = getBanda();
+                if (banda >= bandaPlena * CRESCIMENTO_MINIMO) {
+                    bandaPlena = banda;
+                    rodadasSemCrescimento = 0;
+                } else if (++rodadasSemCrescimento >= RODADAS_SEM_CRESCIMENTO) {
+                    estado = Estado.DRENAGEM;
+                }
+                break;
+            case DRENAGEM:
+                estado = Estado.SONDAGEM;
+                fase = 2;
+                break;
+            default:
+                fase = (fase + 1) % GANHOS_SONDAGEM.length;
+                break;
+        }
+
+        if (bytesPerdidosNaRodada > PERDA_MAXIMA * (bytesPerdidosNaRodada + bytesEntregues)) {
+            for (int i = 0; i < amostrasDeBanda.length; i++) {
+                amostrasDeBanda[i] = (long) (amostrasDeBanda[i] * REDUCAO_POR_PERDA);
+            }
+
+            if (estado == Estado.INICIO) {
+                estado = Estado.DRENAGEM;
+            }
+        }
+        bytesPerdidosNaRodada = 0;
+    }
+
+    @Override
+    public void aoPerder(long bytesPerdidos) {
+        bytesPerdidosNaRodada += bytesPerdidos;
+    }
+
+    private long getBanda() {
+        long banda = 0;
+
+        for (long amostra : amostrasDeBanda) {
+            banda = Math.max(banda, amostra);
+        }
+
+        return banda;
+    }
+
+    private double getGanho() {
+        switch (estado) {
+            case INICIO:
+                return GANHO_INICIO;
+            case DRENAGEM:
+                return 1 / GANHO_INICIO;
+            default:
+                return GANHOS_SONDAGEM[fase];
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+class Copias {
+
+    static final int TAMANHO_DA_COPIA = (2*Integer.BYTES)+Long.BYTES;
+
+    private final int TAMANHO_DADOS;
+
+    private final int[] sequencias;
+    private final int[] quantidades;
+    private final long[] posicoes;
+    private final int tamanho;
+
+    private Copias(int tamanhoDados, int[] sequencias, int[] quantidades, long[] posicoes, int tamanho) {
+        this.TAMANHO_DADOS = tamanhoDados;
+        this.sequencias = sequencias;
+        this.quantidades = quantidades;
+        this.posicoes = posicoes;
+        this.tamanho = tamanho;
+    }
+
+    static Copias criar(long[] trechos, int quantidadeDeTrechos, int tamanhoDados, long tamanhoArquivo, int maximo) {
+        int quantidadeDePacotes = (int) ((tamanhoArquivo + tamanhoDados - 1) / tamanhoDados);
+        int[] sequencias = new int[quantidadeDeTrechos];
+        int[] quantidades = new int[quantidadeDeTrechos];
+        long[] posicoes = new long[quantidadeDeTrechos];
+        int tamanho = 0;
+
+        for (int i = 0; i < quantidadeDeTrechos; i++) {
+            long novo = trechos[3 * i];
+            long antigo = trechos[(3 * i) + 1];
+            long fim = novo + trechos[(3 * i) + 2];
+
+            int primeira = (int) ((novo + tamanhoDados - 1) / tamanhoDados);
+            int ultima = fim == tamanhoArquivo ? quantidadeDePacotes : (int) (fim / tamanhoDados);
+
+            if (primeira < ultima) {
+                sequencias[tamanho] = primeira;
+                quantidades[tamanho] = ultima - primeira;
+                posicoes[tamanho] = antigo + (((long) primeira * tamanhoDados) - novo);
+                tamanho++;
+            }
+        }
+
+        Copias copias = new Copias(tamanhoDados, sequencias, quantidades, posicoes, tamanho);
+
+        return tamanho > maximo ? copias.getMaiores(Math.max(0, maximo)) : copias;
+    }
+
+    static Copias ler(ByteBuffer origem, int tamanhoDados, int quantidadeDePacotes) {
+        int quantidade = origem.remaining() < Short.BYTES ? 0 : origem.getShort() & 0xFFFF;
+        quantidade = Math.min(quantidade, origem.remaining() / TAMANHO_DA_COPIA);
+
+        int[] sequencias = new int[quantidade];
+        int[] quantidades = new int[quantidade];
+        long[] posicoes = new long[quantidade];
+        int tamanho = 0;
+        int fimAnterior = 0;
+
+        for (int i = 0; i < quantidade; i++) {
+            int sequencia = origem.getInt();
+            int pacotes = origem.getInt();
+            long posicao = origem.getLong();
+
+            if (sequencia < fimAnterior || pacotes < 1 || pacotes > quantidadeDePacotes - sequencia || posicao < 0) {
+                continue;
+            }
+
+            sequencias[tamanho] = sequencia;
+            quantidades[tamanho] = pacotes;
+            posicoes[tamanho] = posicao;
+            fimAnterior = sequencia + pacotes;
+            tamanho++;
+        }
+
+        return new Copias(tamanhoDados, sequencias, quantidades, posicoes, tamanho);
+    }
+
+    void put(ByteBuffer destino) {
+        destino.putShort((short) tamanho);
+
+        for (int i = 0; i < tamanho; i++) {
+            destino.putInt(sequencias[i]);
+            destino.putInt(quantidades[i]);
+            destino.putLong(posicoes[i]);
+        }
+    }
+
+    int getQuantidade() {
+        return tamanho;
+    }
+
+    int getPacotesCopiados() {
+        int pacotes = 0;
+
+        for (int i = 0; i < tamanho; i++) {
+            pacotes += quantidades[i];
+        }
+
+        return pacotes;
+    }
+
+    boolean contem(int sequencia) {
+        int indice = buscar(sequencia);
+
+        return indice >= 0 && sequencia < sequencias[indice] + quantidades[indice];
+    }
+
+    boolean contem(int inicio, int fim) {
+        return getProximaCopia(inicio) < fim;
+    }
+
+    int getFim(int sequencia) {
+        int indice = buscar(sequencia);
+
+        if (indice < 0 || sequencia >= sequencias[indice] + quantidades[indice]) {
+            return sequencia;
+        }
+
+        return sequencias[indice] + quantidades[indice];
+    }
+
+    int getProximaCopia(int sequencia) {
+        int indice = buscar(sequencia);
+
+        if (indice >= 0 && sequencia < sequencias[indice] + quantidades[indice]) {
+            return sequencia;
+        }
+
+        return indice + 1 < tamanho ? sequencias[indice + 1] : Integer.MAX_VALUE;
+    }
+
+    long getPosicao(int sequencia) {
+        int indice = buscar(sequencia);
+
+        if (indice < 0 || sequencia >= sequencias[indice] + quantidades[indice]) {
+            return -1;
+        }
+
+        return posicoes[indice] + ((long) (sequencia - sequencias[indice]) * TAMANHO_DADOS);
+    }
+
+    private int buscar(int sequencia) {
+        int inicio = 0;
+        int fim = tamanho - 1;
+
+        while (inicio <= fim) {
+            int meio = (inicio + fim) >>> 1;
+
+            if (sequencias[meio] <= sequencia) {
+                inicio = meio + 1;
+            } else {
+                fim = meio - 1;
+            }
+        }
+
+        return fim;
+    }
+
+    private Copias getMaiores(int maximo) {
+        Integer[] ordem = new Integer[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            ordem[i] = i;
+        }
+
+        Arrays.sort(ordem, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(quantidades[b], quantidades[a]);
+            }
+        });
+
+        int[] escolhidas = new int[maximo];
+        for (int i = 0; i < maximo; i++) {
+            escolhidas[i] = ordem[i];
+        }
+        Arrays.sort(escolhidas);
+
+        int[] novasSequencias = new int[maximo];
+        int[] novasQuantidades = new int[maximo];
+        long[] novasPosicoes = new long[maximo];
+        for (int i = 0; i < maximo; i++) {
+            novasSequencias[i] = sequencias[escolhidas[i]];
+            novasQuantidades[i] = quantidades[escolhidas[i]];
+            novasPosicoes[i] = posicoes[escolhidas[i]];
+        }
+
+        return new Copias(TAMANHO_DADOS, novasSequencias, novasQuantidades, novasPosicoes, maximo);
+    }
+
+}
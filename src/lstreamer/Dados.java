@@ -22,10 +22,14 @@ import java.nio.ByteBuffer;
 
 class Dados extends Pacote {
 
-    static final int TAMANHO_MAX = Byte.BYTES+(2*Integer.BYTES)+Pacote.TAMANHO_MAX_DADOS;
+    static final int TAMANHO_CABECALHO = Byte.BYTES+(4*Integer.BYTES);
+    static final int TAMANHO_MAX = TAMANHO_CABECALHO+Pacote.TAMANHO_MAX_DADOS;
+    static final int TAMANHO_MAX_NEGOCIAVEL = Pacote.TAMANHO_MAX_DATAGRAMA-TAMANHO_CABECALHO;
     
     private int idConexao;
     private int sequencia;
+    private int instante;
+    private int instanteEcoado;
     private byte[] dados;
     
     Dados(InetAddress hostname, int porta) {
@@ -48,21 +52,59 @@ class Dados extends Pacote {
         this.sequencia = sequencia;
     }
 
+    int getInstante() {
+        return instante;
+    }
+
+    int getInstanteEcoado() {
+        return instanteEcoado;
+    }
+
     byte[] getDados() {
         return dados;
     }
     
     int getTamanhoCabecalho() {
-        return Byte.BYTES+(2*Integer.BYTES);
+        return TAMANHO_CABECALHO;
+    }
+
+    static void setCabecalho(ByteBuffer pacote, int idConexao, int sequencia, int instante, int instanteEcoado) {
+        setCabecalho(pacote, Flag.DADOS.getByte(), idConexao, sequencia, instante, instanteEcoado);
+    }
+
+    static void setCabecalho(ByteBuffer pacote, byte flag, int idConexao, int sequencia, int instante, int instanteEcoado) {
+        pacote.put(flag);
+        pacote.putInt(idConexao);
+        pacote.putInt(sequencia);
+        pacote.putInt(instante);
+        pacote.putInt(instanteEcoado);
+    }
+
+    static int getIdConexao(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES);
+    }
+
+    static int getSequencia(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+Integer.BYTES);
+    }
+
+    static int getInstante(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+(2*Integer.BYTES));
+    }
+
+    static int getInstanteEcoado(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+(3*Integer.BYTES));
     }
     
     DatagramPacket get() {
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Byte.BYTES+(2*Integer.BYTES)+tamanho);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(TAMANHO_CABECALHO+tamanho);
         byteBuffer.clear();
         
         byteBuffer.put(flag);
         byteBuffer.putInt(idConexao);
         byteBuffer.putInt(sequencia);
+        byteBuffer.putInt(instante);
+        byteBuffer.putInt(instanteEcoado);
         byteBuffer.put(dados, 0, tamanho);
         
         byte[] bytes = byteBuffer.array();
@@ -70,18 +112,22 @@ class Dados extends Pacote {
         return new DatagramPacket(bytes, bytes.length, HOSTNAME, PORTA);
     }
 
-    void set(int idConexao, int sequencia, byte[] dados, int tamanhoDados) {        
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Byte.BYTES+(2*Integer.BYTES)+tamanhoDados);
+    void set(int idConexao, int sequencia, int instante, int instanteEcoado, byte[] dados, int tamanhoDados) {        
+        ByteBuffer byteBuffer = ByteBuffer.allocate(TAMANHO_CABECALHO+tamanhoDados);
         byteBuffer.clear();
         
         byteBuffer.put(Flag.DADOS.getByte());
         byteBuffer.putInt(idConexao);
         byteBuffer.putInt(sequencia);
+        byteBuffer.putInt(instante);
+        byteBuffer.putInt(instanteEcoado);
         byteBuffer.put(dados, 0, tamanhoDados);
         
         this.tamanho = tamanhoDados;
         this.idConexao = idConexao;
         this.sequencia = sequencia;
+        this.instante = instante;
+        this.instanteEcoado = instanteEcoado;
         
         byte[] array = new byte[tamanhoDados];
         
@@ -98,8 +144,10 @@ class Dados extends Pacote {
         flag = byteBuffer.get();
         idConexao = byteBuffer.getInt();
         sequencia = byteBuffer.getInt();
+        instante = byteBuffer.getInt();
+        instanteEcoado = byteBuffer.getInt();
         
-        int bytesRestantes = tamanhoDados - (Byte.BYTES+(2*Integer.BYTES));
+        int bytesRestantes = tamanhoDados - TAMANHO_CABECALHO;
         byte[] bytes = new byte[bytesRestantes];
         byteBuffer.get(bytes, 0, bytes.length);
         
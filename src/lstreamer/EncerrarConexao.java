@@ -52,5 +52,15 @@ class EncerrarConexao extends Pacote {
         
         return dp;
     }
+
+    void set(byte[] dados, int tamanhoDados) {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(dados, 0, tamanhoDados);
+        byteBuffer.clear();
+
+        flag = byteBuffer.get();
+        idConexao = byteBuffer.getInt();
+
+        this.tamanho = tamanhoDados;
+    }
         
 }
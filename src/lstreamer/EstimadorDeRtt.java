@@ -0,0 +1,104 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.util.concurrent.TimeUnit;
+
+class EstimadorDeRtt {
+
+    private static final int SEM_INSTANTE = 0;
+
+    private final long RTO_MINIMO;
+    private final long RTO_MAXIMO;
+
+    private long srtt;
+    private long rttvar;
+    private int instanteRecente;
+    private long chegadaDoInstante;
+    private int ultimoEco;
+
+    EstimadorDeRtt(long rtoMinimo, long rtoMaximo) {
+        this.RTO_MINIMO = rtoMinimo;
+        this.RTO_MAXIMO = rtoMaximo;
+        this.srtt = 0;
+        this.rttvar = 0;
+        this.instanteRecente = SEM_INSTANTE;
+        this.ultimoEco = SEM_INSTANTE;
+    }
+
+    static int getInstante(long agora) {
+        int instante = (int) TimeUnit.NANOSECONDS.toMicros(agora);
+
+        return instante == SEM_INSTANTE ? instante + 1 : instante;
+    }
+
+    synchronized boolean isAmostrado() {
+        return srtt > 0;
+    }
+
+    synchronized long getSrtt() {
+        return srtt;
+    }
+
+    synchronized long getRto() {
+        return Math.min(RTO_MAXIMO, Math.max(RTO_MINIMO, srtt + 4 * rttvar));
+    }
+
+    synchronized void registrarInstante(int instante, long agora) {
+        instanteRecente = instante;
+        chegadaDoInstante = agora;
+    }
+
+    synchronized int removerEco(long agora) {
+        if (instanteRecente == SEM_INSTANTE) {
+            return SEM_INSTANTE;
+        }
+
+        int eco = instanteRecente + (int) TimeUnit.NANOSECONDS.toMicros(agora - chegadaDoInstante);
+        instanteRecente = SEM_INSTANTE;
+
+        return eco == SEM_INSTANTE ? eco + 1 : eco;
+    }
+
+    synchronized boolean amostrarEco(int eco, long agora) {
+        if (eco == SEM_INSTANTE || eco == ultimoEco) {
+            return false;
+        }
+
+        ultimoEco = eco;
+
+        int decorrido = getInstante(agora) - eco;
+        if (decorrido < 0) {
+            return false;
+        }
+
+        amostrar(TimeUnit.MICROSECONDS.toNanos(Math.max(1, decorrido)));
+
+        return true;
+    }
+
+    private void amostrar(long rtt) {
+        if (srtt == 0) {
+            srtt = rtt;
+            rttvar = rtt / 2;
+        } else {
+            rttvar = (3 * rttvar + Math.abs(srtt - rtt)) / 4;
+            srtt = (7 * srtt + rtt) / 8;
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+class FilaDeInteiros {
+
+    private int[] elementos;
+    private int inicio;
+    private int tamanho;
+
+    FilaDeInteiros(int capacidade) {
+        int potencia = Integer.highestOneBit(Math.max(1, capacidade - 1)) << 1;
+
+        this.elementos = new int[Math.max(2, potencia)];
+        this.inicio = 0;
+        this.tamanho = 0;
+    }
+
+    boolean isVazia() {
+        return tamanho == 0;
+    }
+
+    void adicionar(int valor) {
+        if (tamanho == elementos.length) {
+            crescer();
+        }
+
+        elementos[(inicio + tamanho) & (elementos.length - 1)] = valor;
+        tamanho++;
+    }
+
+    int get(int indice) {
+        return elementos[(inicio + indice) & (elementos.length - 1)];
+    }
+
+    int remover() {
+        int valor = elementos[inicio];
+
+        inicio = (inicio + 1) & (elementos.length - 1);
+        tamanho--;
+
+        return valor;
+    }
+
+    private void crescer() {
+        int[] maior = new int[elementos.length * 2];
+
+        for (int i = 0; i < tamanho; i++) {
+            maior[i] = elementos[(inicio + i) & (elementos.length - 1)];
+        }
+
+        elementos = maior;
+        inicio = 0;
+    }
+
+}
@@ -0,0 +1,44 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+class FimDeFluxo extends Pacote {
+
+    static final int TAMANHO_MAX = Byte.BYTES+Integer.BYTES+Long.BYTES;
+
+    FimDeFluxo(InetAddress hostname, int porta) {
+        super(hostname, porta, Flag.FIM_DE_FLUXO.getByte());
+    }
+
+    static void set(ByteBuffer pacote, int idConexao, long tamanhoArquivo) {
+        pacote.put(Flag.FIM_DE_FLUXO.getByte());
+        pacote.putInt(idConexao);
+        pacote.putLong(tamanhoArquivo);
+    }
+
+    static int getIdConexao(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES);
+    }
+
+    static long getTamanhoArquivo(ByteBuffer pacote) {
+        return pacote.getLong(Byte.BYTES+Integer.BYTES);
+    }
+
+}
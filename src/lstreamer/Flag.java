@@ -21,7 +21,12 @@ enum Flag {
     ACEITA_CONEXAO(new Byte("1")),
     DADOS(new Byte("2")),
     RELATORIO(new Byte("3")),
-    ENCERA_CONEXAO(new Byte("4"));
+    ENCERA_CONEXAO(new Byte("4")),
+    REPARO(new Byte("5")),
+    FIM_DE_FLUXO(new Byte("6")),
+    DADOS_COMPRIMIDOS(new Byte("7")),
+    HASH_DO_BLOCO(new Byte("8")),
+    ASSINATURAS(new Byte("9"));
     
     final byte b;
 
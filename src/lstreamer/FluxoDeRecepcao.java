@@ -0,0 +1,148 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+class FluxoDeRecepcao implements ReadableByteChannel {
+
+    private Queue<Entrega> entregues;
+    private Queue<Buffer> consumidos;
+    private Entrega atual;
+    private volatile Thread leitor;
+    private volatile Thread gravador;
+    private volatile boolean concluido;
+    private volatile boolean interrompido;
+    private volatile boolean aberto;
+
+    FluxoDeRecepcao() {
+        this.entregues = new ConcurrentLinkedQueue<Entrega>();
+        this.consumidos = new ConcurrentLinkedQueue<Buffer>();
+        this.concluido = false;
+        this.interrompido = false;
+        this.aberto = true;
+    }
+
+    void setGravador(Thread gravador) {
+        this.gravador = gravador;
+    }
+
+    void entregar(Buffer buffer, ByteBuffer dados) {
+        entregues.add(new Entrega(buffer, dados));
+        LockSupport.unpark(leitor);
+    }
+
+    Buffer removerConsumido() {
+        return consumidos.poll();
+    }
+
+    void concluir() {
+        concluido = true;
+        LockSupport.unpark(leitor);
+    }
+
+    void interromper() {
+        interrompido = true;
+        LockSupport.unpark(leitor);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer destino) throws IOException {
+        if (!aberto) {
+            throw new ClosedChannelException();
+        }
+
+        if (!destino.hasRemaining()) {
+            return 0;
+        }
+
+        while (atual == null) {
+            leitor = Thread.currentThread();
+            boolean encerrado = concluido;
+            boolean falhou = interrompido;
+            atual = entregues.poll();
+
+            if (atual != null) {
+                break;
+            }
+
+            if (encerrado) {
+                return -1;
+            }
+
+            if (falhou) {
+                throw new IOException("A transmissão foi interrompida.");
+            }
+
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new ClosedByInterruptException();
+            }
+        }
+
+        ByteBuffer dados = atual.dados;
+        int lidos = Math.min(destino.remaining(), dados.remaining());
+        int limite = dados.limit();
+
+        dados.limit(dados.position() + lidos);
+        destino.put(dados);
+        dados.limit(limite);
+
+        if (!dados.hasRemaining()) {
+            if (atual.buffer != null) {
+                consumidos.add(atual.buffer);
+                LockSupport.unpark(gravador);
+            }
+            atual = null;
+        }
+
+        return lidos;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return aberto;
+    }
+
+    @Override
+    public void close() {
+        aberto = false;
+        LockSupport.unpark(gravador);
+    }
+
+    private static class Entrega {
+
+        private final Buffer buffer;
+        private final ByteBuffer dados;
+
+        private Entrega(Buffer buffer, ByteBuffer dados) {
+            this.buffer = buffer;
+            this.dados = dados;
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
+
+class GrupoMulticast {
+
+    private GrupoMulticast() {
+    }
+
+    static DatagramChannel entrar(InetSocketAddress grupo, InetAddress remoto, int tamanhoDoBuffer) throws IOException {
+        ProtocolFamily familia = grupo.getAddress() instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+        DatagramChannel canalDoGrupo = DatagramChannel.open(familia);
+
+        try {
+            canalDoGrupo.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            canalDoGrupo.setOption(StandardSocketOptions.SO_RCVBUF, tamanhoDoBuffer);
+            canalDoGrupo.bind(new InetSocketAddress(grupo.getPort()));
+            canalDoGrupo.join(grupo.getAddress(), getInterface(remoto));
+        } catch (IOException ex) {
+            canalDoGrupo.close();
+            throw ex;
+        }
+
+        return canalDoGrupo;
+    }
+
+    static NetworkInterface getInterface(InetAddress remoto) throws SocketException {
+        DatagramSocket sonda = new DatagramSocket();
+
+        try {
+            sonda.connect(remoto, 9);
+            NetworkInterface interfaceDeRede = NetworkInterface.getByInetAddress(sonda.getLocalAddress());
+            if (interfaceDeRede != null) {
+                return interfaceDeRede;
+            }
+        } finally {
+            sonda.close();
+        }
+
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface interfaceDeRede = interfaces.nextElement();
+            if (interfaceDeRede.isUp() && interfaceDeRede.supportsMulticast()) {
+                return interfaceDeRede;
+            }
+        }
+
+        throw new SocketException("Nenhuma interface de rede com suporte a multicast.");
+    }
+
+}
@@ -0,0 +1,64 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+class HashDoBloco extends Pacote {
+
+    static final int TAMANHO_CABECALHO = Byte.BYTES+(2*Integer.BYTES);
+    static final int TAMANHO_MIN = TAMANHO_CABECALHO+ArvoreDeHashes.TAMANHO_HASH;
+    static final int TAMANHO_MAX = TAMANHO_MIN+ArvoreDeHashes.TAMANHO_HASH;
+
+    HashDoBloco(InetAddress hostname, int porta) {
+        super(hostname, porta, Flag.HASH_DO_BLOCO.getByte());
+    }
+
+    static void setCabecalho(ByteBuffer pacote, int idConexao, int key) {
+        pacote.put(Flag.HASH_DO_BLOCO.getByte());
+        pacote.putInt(idConexao);
+        pacote.putInt(key);
+    }
+
+    static int getIdConexao(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES);
+    }
+
+    static int getKey(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+Integer.BYTES);
+    }
+
+    static boolean temRaiz(ByteBuffer pacote) {
+        return pacote.limit() >= TAMANHO_MAX;
+    }
+
+    static void getHash(ByteBuffer pacote, byte[] destino) {
+        getBytes(pacote, TAMANHO_CABECALHO, destino);
+    }
+
+    static void getRaiz(ByteBuffer pacote, byte[] destino) {
+        getBytes(pacote, TAMANHO_MIN, destino);
+    }
+
+    private static void getBytes(ByteBuffer pacote, int posicao, byte[] destino) {
+        for (int i = 0; i < ArvoreDeHashes.TAMANHO_HASH; i++) {
+            destino[i] = pacote.get(posicao + i);
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+class JanelaDeEnvio {
+
+    private final int CAPACIDADE;
+
+    private int[] sequencias;
+    private int[] transmissoes;
+    private long[] ultimosEnvios;
+    private long[] naFila;
+    private FilaDeInteiros perdidos;
+    private int inicio;
+    private int quantidadeDePacotes;
+
+    JanelaDeEnvio(int capacidade, int quantidadeDePacotes) {
+        this.CAPACIDADE = Math.max(1, capacidade);
+        this.quantidadeDePacotes = quantidadeDePacotes;
+        this.sequencias = new int[CAPACIDADE];
+        this.transmissoes = new int[CAPACIDADE];
+        this.ultimosEnvios = new long[CAPACIDADE];
+        this.naFila = new long[(CAPACIDADE + 63) / 64];
+        this.perdidos = new FilaDeInteiros(CAPACIDADE);
+        this.inicio = 0;
+
+        for (int i = 0; i < CAPACIDADE; i++) {
+            sequencias[i] = -1;
+        }
+    }
+
+    int getInicio() {
+        return inicio;
+    }
+
+    int getFim() {
+        return (int) Math.min(quantidadeDePacotes, (long) inicio + CAPACIDADE);
+    }
+
+    void setQuantidadeDePacotes(int quantidadeDePacotes) {
+        this.quantidadeDePacotes = Math.max(inicio, quantidadeDePacotes);
+    }
+
+    boolean isVazia() {
+        return inicio >= getFim();
+    }
+
+    boolean contem(int sequencia) {
+        return sequencia >= inicio && sequencia < getFim();
+    }
+
+    void avancar(int novoInicio) {
+        if (novoInicio > inicio) {
+            inicio = Math.min(novoInicio, quantidadeDePacotes);
+        }
+    }
+
+    void registrarEnvio(int sequencia, long agora) {
+        int posicao = ocupar(sequencia);
+
+        transmissoes[posicao]++;
+        ultimosEnvios[posicao] = agora;
+    }
+
+    int getTransmissoes(int sequencia) {
+        int posicao = sequencia % CAPACIDADE;
+
+        return sequencias[posicao] == sequencia ? transmissoes[posicao] : 0;
+    }
+
+    long getUltimoEnvio(int sequencia) {
+        int posicao = sequencia % CAPACIDADE;
+
+        return sequencias[posicao] == sequencia ? ultimosEnvios[posicao] : 0;
+    }
+
+    boolean temPerdidos() {
+        return !perdidos.isVazia();
+    }
+
+    boolean adicionarPerdido(int sequencia) {
+        if (!contem(sequencia)) {
+            return false;
+        }
+
+        int posicao = ocupar(sequencia);
+        if (isNaFila(posicao)) {
+            return false;
+        }
+
+        naFila[posicao >>> 6] |= 1L << posicao;
+        perdidos.adicionar(sequencia);
+
+        return true;
+    }
+
+    int removerPerdido() {
+        while (!perdidos.isVazia()) {
+            int sequencia = perdidos.remover();
+            int posicao = sequencia % CAPACIDADE;
+
+            if (sequencias[posicao] != sequencia || !isNaFila(posicao)) {
+                continue;
+            }
+
+            naFila[posicao >>> 6] &= ~(1L << posicao);
+            if (contem(sequencia)) {
+                return sequencia;
+            }
+        }
+
+        return -1;
+    }
+
+    private int ocupar(int sequencia) {
+        int posicao = sequencia % CAPACIDADE;
+
+        if (sequencias[posicao] != sequencia) {
+            sequencias[posicao] = sequencia;
+            transmissoes[posicao] = 0;
+            ultimosEnvios[posicao] = 0;
+            naFila[posicao >>> 6] &= ~(1L << posicao);
+        }
+
+        return posicao;
+    }
+
+    private boolean isNaFila(int posicao) {
+        return (naFila[posicao >>> 6] & (1L << posicao)) != 0;
+    }
+
+}
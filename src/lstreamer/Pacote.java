@@ -17,10 +17,12 @@ limitations under the License.
 package lstreamer;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 
 abstract class Pacote {
 
     static final int TAMANHO_MAX_DADOS = 500;
+    static final int TAMANHO_MAX_DATAGRAMA = 65507;
 
     protected final InetAddress HOSTNAME;
     protected final int PORTA;
@@ -61,6 +63,30 @@ abstract class Pacote {
         return dados[0] == Flag.DADOS.getByte();
     }
     
+    static boolean isDados(ByteBuffer dados) {
+        return dados.limit() > 0 && dados.get(0) == Flag.DADOS.getByte();
+    }
+    
+    static boolean isDadosComprimidos(ByteBuffer dados) {
+        return dados.limit() > 0 && dados.get(0) == Flag.DADOS_COMPRIMIDOS.getByte();
+    }
+    
+    static boolean isHashDoBloco(ByteBuffer dados) {
+        return dados.limit() > 0 && dados.get(0) == Flag.HASH_DO_BLOCO.getByte();
+    }
+    
+    static boolean isAssinaturas(byte[] dados) {
+        return dados[0] == Flag.ASSINATURAS.getByte();
+    }
+    
+    static boolean isReparo(ByteBuffer dados) {
+        return dados.limit() > 0 && dados.get(0) == Flag.REPARO.getByte();
+    }
+    
+    static boolean isFimDeFluxo(ByteBuffer dados) {
+        return dados.limit() > 0 && dados.get(0) == Flag.FIM_DE_FLUXO.getByte();
+    }
+    
     static boolean isRelatorio(byte[] dados) {
         return dados[0] == Flag.RELATORIO.getByte();
     }
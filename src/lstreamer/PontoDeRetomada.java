@@ -0,0 +1,184 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class PontoDeRetomada {
+
+    private static final int IDENTIFICADOR = 0x4C535250;
+    private static final int VERSAO = 1;
+
+    private final long TAMANHO_ARQUIVO;
+    private final long DATA_DE_MODIFICACAO;
+    private final int TAMANHO_DADOS;
+    private final int PACOTES_POR_BUFFER;
+
+    private int pacoteInicial;
+    private long[] blocosGravados;
+
+    PontoDeRetomada(long tamanhoArquivo, long dataDeModificacao, int tamanhoDados, int pacotesPorBuffer, int quantidadeDeBlocos) {
+        this.TAMANHO_ARQUIVO = tamanhoArquivo;
+        this.DATA_DE_MODIFICACAO = dataDeModificacao;
+        this.TAMANHO_DADOS = tamanhoDados;
+        this.PACOTES_POR_BUFFER = pacotesPorBuffer;
+        this.pacoteInicial = 0;
+        this.blocosGravados = new long[(quantidadeDeBlocos + 63) / 64];
+    }
+
+    long getTamanhoArquivo() {
+        return TAMANHO_ARQUIVO;
+    }
+
+    long getDataDeModificacao() {
+        return DATA_DE_MODIFICACAO;
+    }
+
+    int getTamanhoDados() {
+        return TAMANHO_DADOS;
+    }
+
+    int getPacotesPorBuffer() {
+        return PACOTES_POR_BUFFER;
+    }
+
+    int getPacoteInicial() {
+        return pacoteInicial;
+    }
+
+    boolean isCompativel(long tamanhoArquivo, long dataDeModificacao, int tamanhoDados, int pacotesPorBuffer) {
+        return TAMANHO_ARQUIVO == tamanhoArquivo && DATA_DE_MODIFICACAO == dataDeModificacao
+                && TAMANHO_DADOS == tamanhoDados && PACOTES_POR_BUFFER == pacotesPorBuffer;
+    }
+
+    int getBlocosAFrente() {
+        int primeiro = pacoteInicial / PACOTES_POR_BUFFER;
+        int ultimo = -1;
+
+        for (int i = blocosGravados.length - 1; i >= 0 && ultimo < 0; i--) {
+            if (blocosGravados[i] != 0) {
+                ultimo = (i * 64) + 63 - Long.numberOfLeadingZeros(blocosGravados[i]);
+            }
+        }
+
+        return Math.max(0, ultimo + 1 - primeiro);
+    }
+
+    boolean isBlocoAFrenteGravado(int indice) {
+        int bloco = (pacoteInicial / PACOTES_POR_BUFFER) + indice;
+
+        return bloco < blocosGravados.length * 64 && (blocosGravados[bloco >>> 6] & (1L << bloco)) != 0;
+    }
+
+    void atualizar(int pacoteInicial, AtomicLongArray buffersGravados) {
+        this.pacoteInicial = pacoteInicial;
+
+        for (int i = 0; i < blocosGravados.length && i < buffersGravados.length(); i++) {
+            blocosGravados[i] = buffersGravados.get(i);
+        }
+    }
+
+    void restaurar(AtomicLongArray buffersGravados) {
+        for (int i = 0; i < blocosGravados.length && i < buffersGravados.length(); i++) {
+            buffersGravados.set(i, blocosGravados[i]);
+        }
+    }
+
+    void gravar(File arquivo) throws IOException {
+        File temporario = new File(arquivo.getPath() + ".novo");
+        FileOutputStream saida = new FileOutputStream(temporario);
+
+        try {
+            DataOutputStream dados = new DataOutputStream(new BufferedOutputStream(saida));
+            dados.writeInt(IDENTIFICADOR);
+            dados.writeInt(VERSAO);
+            dados.writeLong(TAMANHO_ARQUIVO);
+            dados.writeLong(DATA_DE_MODIFICACAO);
+            dados.writeInt(TAMANHO_DADOS);
+            dados.writeInt(PACOTES_POR_BUFFER);
+            dados.writeInt(pacoteInicial);
+            dados.writeInt(blocosGravados.length);
+            for (long palavra : blocosGravados) {
+                dados.writeLong(palavra);
+            }
+            dados.flush();
+            saida.getFD().sync();
+        } finally {
+            saida.close();
+        }
+
+        Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static PontoDeRetomada ler(File arquivo) {
+        if (!arquivo.isFile()) {
+            return null;
+        }
+
+        try {
+            DataInputStream dados = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)));
+
+            try {
+                if (dados.readInt() != IDENTIFICADOR || dados.readInt() != VERSAO) {
+                    return null;
+                }
+
+                long tamanhoArquivo = dados.readLong();
+                long dataDeModificacao = dados.readLong();
+                int tamanhoDados = dados.readInt();
+                int pacotesPorBuffer = dados.readInt();
+                int pacoteInicial = dados.readInt();
+                int palavras = dados.readInt();
+
+                if (tamanhoArquivo < 0 || tamanhoDados < Pacote.TAMANHO_MAX_DADOS || pacotesPorBuffer < 1) {
+                    return null;
+                }
+
+                long pacotes = (tamanhoArquivo + tamanhoDados - 1) / tamanhoDados;
+                long blocos = (pacotes + pacotesPorBuffer - 1) / pacotesPorBuffer;
+
+                if (pacotes > Integer.MAX_VALUE || palavras != (blocos + 63) / 64
+                        || pacoteInicial < 0 || pacoteInicial > blocos * pacotesPorBuffer || pacoteInicial % pacotesPorBuffer != 0) {
+                    return null;
+                }
+
+                PontoDeRetomada ponto = new PontoDeRetomada(tamanhoArquivo, dataDeModificacao, tamanhoDados, pacotesPorBuffer, (int) blocos);
+                ponto.pacoteInicial = pacoteInicial;
+                for (int i = 0; i < palavras; i++) {
+                    ponto.blocosGravados[i] = dados.readLong();
+                }
+
+                return ponto;
+            } finally {
+                dados.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+}
@@ -16,49 +16,130 @@ limitations under the License.
 
 package lstreamer;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Receptor {
 
-    private final int TAMANHO_BUFFER = 500;
+    private final int[] TAMANHOS_DE_SONDAGEM = {Dados.TAMANHO_MAX_NEGOCIAVEL, 8972 - Dados.TAMANHO_CABECALHO,
+        1472 - Dados.TAMANHO_CABECALHO, Pacote.TAMANHO_MAX_DADOS};
+    private final int TEMPO_DE_SONDAGEM = 1000;
+    private final int TAMANHO_BUFFER_DO_SOCKET = 8 << 20;
+    private final int PACOTES_POR_RELATORIO = 64;
+    private final long INTERVALO_DE_RELATORIO = 10;
+    private final long INTERVALO_DE_CONFIRMACAO = 100;
+    private final long TIMEOUT_MINIMO = 200;
+    private final long TIMEOUT_MAXIMO = 60000;
+    private final long INTERVALO_DE_RETOMADA = 1000;
+    private final long INTERVALO_DE_MANUTENCAO = 1000;
+    private final int LIMIAR_DE_REORDENACAO = 3;
+    private final long ATRASO_MINIMO_DE_REORDENACAO = 1;
+    private final long LIMITE_DE_NACKS_POR_SEGUNDO = 100000;
+    private final long TAXA_DE_ENVIO_DAS_ASSINATURAS = 10 << 20;
     private final InetAddress HOSTNAME;
     private final int PORTA;
 
     private int idConexao;
+    private DatagramChannel canal;
+    private DatagramChannel[] canais;
+    private DatagramChannel canalDoGrupo;
     private DatagramSocket socket;
     private DatagramSocket socketResposta;
-    private Map<Integer, Buffer> buffers;
+    private Buffer[] buffers;
+    private Queue<Buffer> buffersCompletos;
+    private RodaDeTemporizadores<Buffer> temporizadores;
+    private volatile Thread gravador;
+    private ByteBuffer relatorio;
+    private DatagramPacket resposta;
+    private volatile AtomicLongArray buffersGravados;
     private int quantidadeDeBuffers;
-    private int bufferASerGravado;
+    private int pacotesPorBuffer;
+    private int tamanhoDados;
+    private int tamanhoMaximoDosPacotes;
+    private volatile int bufferASerGravado;
     private int ultimoPacoteOrdenado;
-    private int quantidadeTotalDePacotes;
+    private AtomicIntegerArray maioresSequenciasRecebidas;
+    private AtomicInteger pacotesRecebidos;
+    private AtomicInteger pacotesDuplicados;
+    private int quantidadeDeCanais;
+    private volatile int pacotesRecebidosNoRelatorio;
+    private volatile int quantidadeTotalDePacotes;
+    private volatile long tamanhoArquivo;
+    private volatile long tamanhoFinal;
+    private boolean acompanhar;
+    private volatile boolean acompanhando;
+    private boolean compressao;
+    private boolean comprimindo;
+    private boolean verificacao;
+    private boolean verificando;
+    private byte[] folhas;
+    private long[] blocosRetomados;
+    private volatile byte[] raizDoTransmissor;
+    private volatile byte[] hashRaiz;
+    private volatile boolean corrompido;
+    private Queue<Integer> blocosCorrompidos;
+    private boolean delta;
+    private boolean multicast;
+    private InetSocketAddress grupo;
+    private FileChannel arquivoAntigo;
+    private TabelaDeAssinaturas assinaturas;
+    private Copias copias;
+    private int proximaCopia;
+    private ByteBuffer leituraDaCopia;
+    private AtomicInteger pacotesCopiados;
+    private ExecutorService trabalhadores;
+    private int blocoDoPrefixo;
+    private int bytesEntreguesNoBloco;
     private int quantidadeDeBuffersEnviandoRelatorio;
     private int tentativasDaConexao;
-    private int pacing;
+    private Cadenciador cadenciador;
+    private Cadenciador cadenciadorDeNacks;
+    private FilaDeInteiros lacunas;
+    private volatile int sequenciaDeNack;
+    private volatile int canalDaNack;
+    private long origemDasLacunas;
+    private long atrasoDeReordenacao;
+    private EstimadorDeRtt estimadorDeRtt;
     private long timeout;
     private String diretorio;
     private String arquivo;
-    private DataOutputStream saida;
+    private FileChannel saida;
+    private FluxoDeRecepcao fluxo;
+    private volatile int bufferASerEntregue;
+    private PontoDeRetomada pontoDeRetomada;
+    private File arquivoDeRetomada;
     private volatile boolean recebendo;
 
     /**
@@ -97,13 +178,41 @@ public class Receptor {
     public Receptor(String hostname, int porta) throws UnknownHostException {
         this.HOSTNAME = InetAddress.getByName(hostname);
         this.PORTA = porta;
-        this.buffers = new ConcurrentHashMap<Integer, Buffer>();
         this.quantidadeDeBuffers = 30;
+        this.pacotesPorBuffer = 0;
+        this.tamanhoDados = Pacote.TAMANHO_MAX_DADOS;
+        this.tamanhoMaximoDosPacotes = HOSTNAME.isLoopbackAddress() ? TAMANHOS_DE_SONDAGEM[0] : TAMANHOS_DE_SONDAGEM[2];
         this.bufferASerGravado = 0;
         this.ultimoPacoteOrdenado = 0;
+        this.maioresSequenciasRecebidas = new AtomicIntegerArray(1);
+        this.maioresSequenciasRecebidas.set(0, -1);
+        this.pacotesRecebidos = new AtomicInteger();
+        this.pacotesDuplicados = new AtomicInteger();
+        this.quantidadeDeCanais = 1;
+        this.acompanhar = false;
+        this.acompanhando = false;
+        this.compressao = false;
+        this.comprimindo = false;
+        this.verificacao = false;
+        this.verificando = false;
+        this.corrompido = false;
+        this.delta = false;
+        this.multicast = false;
+        this.pacotesCopiados = new AtomicInteger();
+        this.tamanhoFinal = -1;
+        this.pacotesRecebidosNoRelatorio = 0;
         this.quantidadeDeBuffersEnviandoRelatorio = quantidadeDeBuffers;
         this.tentativasDaConexao = 5;
-        this.pacing = 7;
+        this.cadenciador = new Cadenciador();
+        this.cadenciador.setIntervalo(TimeUnit.MILLISECONDS.toNanos(7));
+        this.cadenciadorDeNacks = new Cadenciador();
+        this.cadenciadorDeNacks.setTaxaEmBytes(LIMITE_DE_NACKS_POR_SEGUNDO);
+        this.cadenciadorDeNacks.setTamanhoDoPacote(1);
+        this.lacunas = new FilaDeInteiros(64);
+        this.sequenciaDeNack = Integer.MAX_VALUE;
+        this.atrasoDeReordenacao = ATRASO_MINIMO_DE_REORDENACAO;
+        this.estimadorDeRtt = new EstimadorDeRtt(TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MINIMO),
+                TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MAXIMO));
         this.timeout = 3000;
         this.recebendo = false;
 
@@ -141,6 +250,70 @@ public class Receptor {
         return resultado;
     }
 
+    /**
+     * Retorna a quantidade de pacotes de dados recebidos do transmissor,
+     * incluindo os duplicados.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes de dados recebidos.
+     *
+     */
+    public int getPacotesRecebidos() {
+        return pacotesRecebidos.get();
+    }
+
+    /**
+     * Retorna a quantidade de pacotes de dados recebidos mais de uma vez.
+     *
+     * Os pacotes duplicados são descartados pelo receptor, portanto
+     * representam banda desperdiçada durante a transmissão.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes de dados duplicados.
+     *
+     */
+    public int getPacotesDuplicados() {
+        return pacotesDuplicados.get();
+    }
+
+    /**
+     * Retorna a quantidade de pacotes de dados que não precisaram ser
+     * recebidos por já existirem na cópia local do arquivo.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes copiados da versão anterior do arquivo.
+     *
+     */
+    public int getPacotesCopiados() {
+        return pacotesCopiados.get();
+    }
+
+    /**
+     * Retorna a quantidade de pacotes de dados perdidos que foram
+     * reconstruídos localmente a partir dos pacotes de reparo enviados pelo
+     * transmissor, sem a necessidade de reenvio.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes de dados recuperados.
+     *
+     */
+    public int getPacotesRecuperados() {
+        int total = 0;
+        Buffer[] buffers = this.buffers;
+
+        if (buffers != null) {
+            for (Buffer buffer : buffers) {
+                total += buffer.getPacotesRecuperados();
+            }
+        }
+
+        return total;
+    }
+
     /**
      * Altera a quantidade de buffers a serem utilizados pelo receptor.
      *
@@ -172,8 +345,14 @@ public class Receptor {
      * pronto para ser gravado ocorre um timeout. O timeout faz com que o
      * receptor informe ao transmissor que alguns pacotes foram perdidos durante
      * a transmissão, deixando a cargo do transmissor o reenvio destes pacotes.
-     * O timeout vem com o valor padrão de 3000 milisegundos, não podendo ser um
-     * valor menor que zero.
+     * Lacunas na sequência dos pacotes recebidos são informadas bem antes,
+     * assim que superam o limiar de reordenação ou cerca de um quarto do tempo
+     * de ida e volta, e o timeout serve apenas para os reenvios que também se
+     * perderem. Assim que o tempo de ida e volta é medido, o timeout passa a
+     * acompanhá-lo no estilo da RFC 6298, com no mínimo 200 milisegundos, e o
+     * valor informado aqui se torna seu limite superior. O timeout vem com o
+     * valor padrão de 3000 milisegundos, não podendo ser um valor menor que
+     * zero.
      *
      * @author Marcelo Canzian Nunes
      *
@@ -251,10 +430,227 @@ public class Receptor {
      * @param pacing o tempo em milisegundos de espaçamento entre o envio dos
      * pacotes.
      *
+     * @deprecated substituído por setTaxaDeEnvioEmPacotes(long), que permite
+     * controlar a taxa com precisão muito maior que um milissegundo.
+     *
      */
+    @Deprecated
     public void setPacing(int pacing) {
         if (pacing >= 0) {
-            this.pacing = pacing;
+            cadenciador.setIntervalo(TimeUnit.MILLISECONDS.toNanos(pacing));
+        }
+    }
+
+    /**
+     * Altera a taxa máxima, em pacotes por segundo, com que o receptor envia
+     * relatórios e pedidos de encerramento ao transmissor.
+     *
+     * O envio é cadenciado por um balde de fichas com resolução de
+     * nanossegundos. Caso o valor seja zero, a taxa não será limitada. Por
+     * padrão a taxa equivale a um pacote a cada 7 milisegundos.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param pacotesPorSegundo a quantidade máxima de pacotes enviados por
+     * segundo ao transmissor.
+     *
+     */
+    public void setTaxaDeEnvioEmPacotes(long pacotesPorSegundo) {
+        if (pacotesPorSegundo >= 0) {
+            cadenciador.setTaxaEmPacotes(pacotesPorSegundo);
+        }
+    }
+
+    /**
+     * Altera o número de canais paralelos pedidos ao transmissor.
+     *
+     * Com mais de um canal, os blocos do arquivo são distribuídos entre
+     * vários sockets, cada um com sua própria thread de recepção no receptor
+     * e de envio no transmissor, e os pacotes continuam sendo reunidos nos
+     * mesmos buffers. Isso permite que um único arquivo aproveite vários
+     * núcleos em redes muito rápidas. O transmissor pode conceder menos
+     * canais que os pedidos. O valor deve estar entre 1 e 64, e o padrão é de
+     * um único canal.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param quantidade o número de canais pedidos ao transmissor.
+     *
+     */
+    public void setQuantidadeDeCanais(int quantidade) {
+        if (quantidade >= 1 && quantidade <= SolicitarConexao.MAXIMO_DE_CANAIS) {
+            this.quantidadeDeCanais = quantidade;
+        }
+    }
+
+    /**
+     * Pede ao transmissor que acompanhe o arquivo enquanto ele ainda está
+     * sendo escrito.
+     *
+     * Nesse modo o tamanho do arquivo não é conhecido de antemão: o
+     * transmissor envia os dados à medida que são acrescentados ao arquivo, e
+     * o receptor os grava, ou entrega pelo canal de leitura, assim que chegam
+     * em ordem, sem esperar que um buffer inteiro se complete. A recepção só
+     * termina quando o transmissor sinaliza o fim do fluxo, o que acontece
+     * após uma chamada a finalizarAcompanhamento no transmissor. Não há ponto
+     * de retomada nesse modo, e o padrão é não acompanhar.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param acompanhar true para receber o arquivo enquanto ele cresce.
+     *
+     */
+    public void setAcompanharArquivo(boolean acompanhar) {
+        this.acompanhar = acompanhar;
+    }
+
+    /**
+     * Define se o receptor pede ao transmissor que comprima os dados.
+     *
+     * A compressão é negociada na conexão e feita com Deflate, buffer a
+     * buffer, de modo que pacotes perdidos continuam sendo pedidos e
+     * reenviados individualmente. Cada buffer comprimido é descomprimido por
+     * um conjunto de threads, uma por processador, antes de ser gravado ou
+     * entregue. Arquivos de texto, CSV e logs costumam encolher várias vezes;
+     * buffers que não encolhem seguem sem compressão. O transmissor pode
+     * recusar o pedido, e a compressão não é usada ao acompanhar um arquivo.
+     * Por padrão é desativada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param compressao true para pedir a compressão dos dados.
+     *
+     */
+    public void setCompressao(boolean compressao) {
+        this.compressao = compressao;
+    }
+
+    /**
+     * Ativa ou desativa a verificação da integridade dos dados recebidos.
+     *
+     * Quando ativada, o transmissor envia o hash SHA-256 de cada buffer,
+     * calculado a partir do arquivo original, e a raiz da árvore de Merkle
+     * formada por esses hashes. Cada buffer recebido é conferido antes de ser
+     * gravado ou entregue; um buffer corrompido é descartado e pedido
+     * novamente. Ao final, a raiz calculada a partir de todos os buffers é
+     * comparada com a do transmissor e fica disponível em getHashRaiz. A
+     * verificação não é usada ao acompanhar um arquivo. Por padrão é
+     * desativada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param verificacao true para verificar os dados recebidos.
+     *
+     */
+    public void setVerificacao(boolean verificacao) {
+        this.verificacao = verificacao;
+    }
+
+    /**
+     * Retorna a raiz da árvore de Merkle do arquivo recebido.
+     *
+     * O valor só é preenchido quando a verificação está ativada e a raiz
+     * calculada a partir dos dados recebidos coincide com a enviada pelo
+     * transmissor.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return os 32 bytes da raiz SHA-256, ou null caso a transmissão não
+     * tenha sido concluída e verificada.
+     *
+     */
+    public byte[] getHashRaiz() {
+        byte[] raiz = hashRaiz;
+
+        return raiz == null ? null : raiz.clone();
+    }
+
+    /**
+     * Informa se a verificação do arquivo recebido falhou.
+     *
+     * Com a verificação ativada, a raiz da árvore de Merkle calculada ao final
+     * da recepção é comparada com a enviada pelo transmissor. Quando elas
+     * divergem, o arquivo não recebe o nome final: ele continua com a extensão
+     * .temp, e os blocos aproveitados de uma recepção anterior são retirados
+     * do ponto de retomada, de modo que uma nova chamada a receber pede esses
+     * blocos novamente ao transmissor. Ao receber como fluxo, a leitura é
+     * interrompida com erro.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return true caso a última recepção tenha terminado com a raiz
+     * divergente da enviada pelo transmissor.
+     *
+     */
+    public boolean isArquivoCorrompido() {
+        return corrompido;
+    }
+
+    /**
+     * Ativa ou desativa a transferência delta.
+     *
+     * Quando ativada e o diretório de destino já contém uma versão anterior
+     * do arquivo, o receptor envia ao transmissor as assinaturas dos blocos
+     * dessa versão, uma soma deslizante e um MD5 por bloco. O transmissor
+     * localiza esses blocos no arquivo novo, mesmo que tenham mudado de
+     * posição, e deixa de enviar os pacotes que o receptor pode copiar da
+     * versão local; apenas os trechos alterados atravessam a rede. Vale para
+     * o método receber, não é usada ao acompanhar um arquivo nem ao retomar
+     * uma recepção interrompida. Para garantir que as cópias locais
+     * correspondem ao arquivo novo, combine com setVerificacao. Por padrão é
+     * desativada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param delta true para aproveitar a versão local do arquivo.
+     *
+     */
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
+
+    /**
+     * Define se o receptor aceita receber os dados por um grupo multicast.
+     *
+     * Quando o transmissor tem um grupo multicast configurado, receptores que
+     * pedem o mesmo arquivo ao mesmo tempo passam a receber os mesmos pacotes,
+     * enviados uma única vez ao grupo, enquanto os relatórios e pedidos de
+     * reenvio continuam sendo enviados ao transmissor por unicast. O receptor
+     * entra no grupo indicado pelo transmissor ao aceitar a conexão, pela
+     * interface de rede usada para alcançá-lo. Caso o transmissor não tenha um
+     * grupo configurado, ou o pedido seja de acompanhamento, de retomada ou de
+     * delta, a recepção segue por unicast. Por padrão é desativado.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param multicast true para aceitar a recepção pelo grupo multicast.
+     *
+     */
+    public void setMulticast(boolean multicast) {
+        this.multicast = multicast;
+    }
+
+    /**
+     * Altera o tamanho máximo, em bytes, dos dados carregados em cada pacote.
+     *
+     * Ao solicitar a conexão, o receptor propõe ao transmissor o maior
+     * tamanho de pacote permitido e, caso a resposta não chegue, tenta
+     * novamente com tamanhos menores até encontrar o maior que atravessa a
+     * rede, chegando no mínimo a 500 bytes. Pacotes maiores reduzem o custo
+     * por byte transmitido, porém pacotes maiores que o MTU da rede serão
+     * fragmentados, o que multiplica as perdas. O valor deve estar entre 500
+     * e 65490 bytes. Por padrão é de 65490 bytes quando o transmissor está na
+     * mesma máquina e de 1455 bytes, o máximo sem fragmentação em redes
+     * Ethernet, nos demais casos. Em redes com jumbo frames utilize 8955 bytes.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param bytes o tamanho máximo dos dados de cada pacote.
+     *
+     */
+    public void setTamanhoMaximoDosPacotes(int bytes) {
+        if (bytes >= Pacote.TAMANHO_MAX_DADOS && bytes <= Dados.TAMANHO_MAX_NEGOCIAVEL) {
+            this.tamanhoMaximoDosPacotes = bytes;
         }
     }
 
@@ -266,6 +662,12 @@ public class Receptor {
      * gravado no diretório indicado. O receptor se encarrega de gerenciar os
      * pedidos e a gravação do arquivo no diretório determinado.
      *
+     * Durante a recepção o receptor mantém, junto ao arquivo temporário, um
+     * ponto de retomada com os blocos já gravados. Caso a recepção seja
+     * interrompida, a próxima chamada para o mesmo arquivo e diretório pede ao
+     * transmissor apenas os blocos que faltam, desde que o arquivo de origem
+     * mantenha o mesmo tamanho e data de modificação.
+     *
      * @author Marcelo Canzian Nunes
      *
      * @param arquivoASerRecebido o nome do arquivo a ser trnasmitido atraves do
@@ -274,59 +676,119 @@ public class Receptor {
      *
      */
     public void receber(final String arquivoASerRecebido, final String diretorioASerGravado) {
+        iniciarRecepcao(arquivoASerRecebido, diretorioASerGravado, null);
+    }
+
+    /**
+     * Recebe um arquivo através de streaming, entregando seus bytes em ordem
+     * por um canal de leitura em vez de gravá-los em disco.
+     *
+     * Cada bloco se torna legível assim que todos os blocos anteriores tiverem
+     * sido lidos e ele estiver completo. Um bloco só é liberado para novos
+     * pacotes depois de lido por inteiro, por isso um consumidor lento
+     * segura a janela de transmissão: o transmissor não envia além da
+     * quantidade de buffers do receptor, e a memória usada fica limitada pelo
+     * valor de {@link #setQuantidadeBuffers(int)}. A leitura retorna -1 ao
+     * final do arquivo e lança uma IOException caso a transmissão seja
+     * interrompida. Fechar o canal antes do fim encerra a transmissão. Nesse
+     * modo não há ponto de retomada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param arquivoASerRecebido o nome do arquivo a ser transmitido através
+     * do transmissor.
+     *
+     * @return o canal de onde os bytes do arquivo podem ser lidos em ordem.
+     *
+     */
+    public ReadableByteChannel receberComoCanal(String arquivoASerRecebido) {
+        FluxoDeRecepcao fluxoDoArquivo = new FluxoDeRecepcao();
+
+        iniciarRecepcao(arquivoASerRecebido, null, fluxoDoArquivo);
+
+        return fluxoDoArquivo;
+    }
+
+    /**
+     * Recebe um arquivo através de streaming, entregando seus bytes em ordem
+     * por um InputStream em vez de gravá-los em disco.
+     *
+     * Funciona como {@link #receberComoCanal(String)}, inclusive quanto ao
+     * controle de fluxo: enquanto o consumidor não lê, o transmissor deixa de
+     * enviar novos blocos.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param arquivoASerRecebido o nome do arquivo a ser transmitido através
+     * do transmissor.
+     *
+     * @return o InputStream de onde os bytes do arquivo podem ser lidos em
+     * ordem.
+     *
+     */
+    public InputStream receberComoFluxo(String arquivoASerRecebido) {
+        return Channels.newInputStream(receberComoCanal(arquivoASerRecebido));
+    }
+
+    private void iniciarRecepcao(final String arquivoASerRecebido, final String diretorioASerGravado,
+            final FluxoDeRecepcao fluxoDoArquivo) {
         new Thread() {
             @Override
             public void run() {
                 diretorio = diretorioASerGravado;
                 arquivo = arquivoASerRecebido;
+                fluxo = fluxoDoArquivo;
                 recebendo = true;
+                if (fluxo == null) {
+                    arquivoDeRetomada = new File(getCaminhoTemporario() + ".retomada");
+                    pontoDeRetomada = new File(getCaminhoTemporario()).isFile() && !acompanhar
+                            ? PontoDeRetomada.ler(arquivoDeRetomada) : null;
+                } else {
+                    arquivoDeRetomada = null;
+                    pontoDeRetomada = null;
+                }
 
                 try {
-                    socket = new DatagramSocket();
+                    canal = DatagramChannel.open();
+                    socket = canal.socket();
+                    socket.bind(null);
                     socket.setSoTimeout(((int) timeout) * 3);
+                    socket.setReceiveBufferSize(TAMANHO_BUFFER_DO_SOCKET);
+                    abrirCanais();
+                    prepararDelta();
 
                     if (!criarConexao(arquivoASerRecebido)) {
                         System.err.println("Não foi possivel estabelecer uma conexão.");
+                        fecharArquivoAntigo();
+                        interromperFluxo();
+                        fecharCanais();
                         socket.close();
                         return;
                     }
                     System.out.println(arquivo);
 
+                    entrarNoGrupo();
+                    criarBuffers();
                     enviarRespostas();
 
-                    byte[] buffer = new byte[Dados.TAMANHO_MAX];
-                    DatagramPacket pacote = new DatagramPacket(buffer, buffer.length);
-
                     System.out.println("Recebendo pacotes ...");
-                    while (recebendo) {
-                        try {
-                            socket.receive(pacote);
-
-                            if (!Pacote.isDados(pacote.getData())) {
-                                continue;
-                            }
-
-                            Dados p = new Dados(pacote.getAddress(), pacote.getPort());
-                            p.set(pacote.getData(), pacote.getLength());
-
-                            if (p.getIdConexao() != idConexao) {
-                                continue;
-                            }
-
-                            setPacoteNoBuffer(p);
-                        } catch (SocketTimeoutException e) {
-                        } catch (UnknownHostException ex) {
-                            System.err.println("Ocorreu um erro na conexão.");
-                        } catch (IOException ex) {
-                            System.err.println("Ocorreu um erro na conexão.");
-                        }
-
+                    for (int i = 1; i < canais.length; i++) {
+                        receberEmParalelo(canais[i]);
+                    }
+                    if (canalDoGrupo != null) {
+                        receberEmParalelo(canalDoGrupo);
                     }
+                    receberPacotes(canal);
                 } catch (SocketException ex) {
                     System.err.println("Ocorreu um erro na conexão.");
+                    interromperFluxo();
                 } catch (IOException ex) {
-                    System.err.println("Ocorreu um erro na conexão.");
+                    if (recebendo) {
+                        System.err.println("Ocorreu um erro na conexão.");
+                        interromperFluxo();
+                    }
                 } finally {
+                    fecharCanais();
                     socket.close();
                     System.out.println("Transmissao finalizada.");
                 }
@@ -334,171 +796,1271 @@ public class Receptor {
         }.start();
     }
 
-    private boolean criarConexao(String arquivoASerRecebido) throws IOException {
-        byte[] buffer = new byte[Pacote.TAMANHO_MAX_DADOS];
-        DatagramPacket resposta = new DatagramPacket(buffer, buffer.length);
-        SolicitarConexao pedidoSolicitacao = new SolicitarConexao(HOSTNAME, PORTA);
+    private void interromperFluxo() {
+        if (fluxo != null) {
+            fluxo.interromper();
+        }
+    }
 
-        System.out.println("Tentando estabelecer conexão ...");
+    private void abrirCanais() throws IOException {
+        canais = new DatagramChannel[quantidadeDeCanais];
+        canais[0] = canal;
 
-        int tentativas = tentativasDaConexao;
-        while (tentativas > 0) {
-            try {
-                socket.send(pedidoSolicitacao.set(
-                	arquivoASerRecebido, quantidadeDeBuffers));
-                socket.receive(resposta);
+        for (int i = 1; i < canais.length; i++) {
+            canais[i] = DatagramChannel.open();
+            canais[i].socket().bind(null);
+            canais[i].socket().setReceiveBufferSize(TAMANHO_BUFFER_DO_SOCKET);
+        }
+    }
 
-                if (!Pacote.isAceitarConexao(resposta.getData())) {
-                    continue;
-                }
+    private int[] getPortasDosCanais() {
+        int[] portas = new int[canais.length];
+
+        for (int i = 0; i < canais.length; i++) {
+            portas[i] = canais[i].socket().getLocalPort();
+        }
 
-                AceitarConexao aceitou = new AceitarConexao(resposta.getAddress(), resposta.getPort());
-                aceitou.set(resposta.getData(), resposta.getLength());
-                idConexao = aceitou.getIdConexao();
-                quantidadeTotalDePacotes = aceitou.getQuantidadePacotesPrevistos();
+        return portas;
+    }
 
-                System.out.println("");
-                System.out.println("Conexão aceita.");
+    private void usarCanais(int quantidade) {
+        int concedidos = Math.max(1, Math.min(quantidade, canais.length));
+        DatagramChannel[] usados = new DatagramChannel[concedidos];
 
-                return true;
-            } catch (SocketTimeoutException e) {
-                tentativas--;
+        System.arraycopy(canais, 0, usados, 0, concedidos);
+        for (int i = concedidos; i < canais.length; i++) {
+            try {
+                canais[i].close();
+            } catch (IOException ex) {
             }
         }
 
-        System.out.println("");
-        return false;
+        canais = usados;
     }
 
-    private synchronized void setPacoteNoBuffer(Dados pacote) throws UnknownHostException {
-        int posicao = pacote.getSequencia() % TAMANHO_BUFFER;
-        int key = pacote.getSequencia() - posicao;
+    private void fecharCanais() {
+        for (int i = 1; canais != null && i < canais.length; i++) {
+            try {
+                canais[i].close();
+            } catch (IOException ex) {
+            }
+        }
 
-        Buffer buffer;
-        if (buffers.containsKey(key)) {
-            buffer = buffers.get(key);
-            buffer.set(posicao, pacote);
-        } else {
-            if (key >= bufferASerGravado) {
-                int tamanho;
+        if (canalDoGrupo != null) {
+            try {
+                canalDoGrupo.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
 
-                if ((quantidadeTotalDePacotes - key) < TAMANHO_BUFFER) {
-                    tamanho = (quantidadeTotalDePacotes - key);
-                } else {
-                    tamanho = TAMANHO_BUFFER;
-                }
+    private void entrarNoGrupo() throws IOException {
+        canalDoGrupo = null;
 
-                buffer = new Buffer(tamanho);
-                buffer.setTimeout(timeout);
-                buffers.put(key, buffer);
-                buffer.set(posicao, pacote);
-            }
+        if (grupo != null) {
+            canalDoGrupo = GrupoMulticast.entrar(grupo, HOSTNAME, TAMANHO_BUFFER_DO_SOCKET);
         }
     }
 
-    private void enviarRespostas() {
+    private void receberEmParalelo(final DatagramChannel canalDeRecepcao) {
         new Thread() {
             @Override
             public void run() {
-                long tempo = System.currentTimeMillis();
-
                 try {
-                    socketResposta = new DatagramSocket();
+                    receberPacotes(canalDeRecepcao);
+                } catch (IOException ex) {
+                    if (recebendo) {
+                        System.err.println("Ocorreu um erro na conexão.");
+                    }
+                }
+            }
+        }.start();
+    }
 
-                    String novoArquivo = ((diretorio.trim()) + (arquivo.trim()) + ".temp");
-                    saida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(novoArquivo)), Pacote.TAMANHO_MAX_DADOS));
+    private void receberPacotes(DatagramChannel canalDeRecepcao) throws IOException {
+        ByteBuffer pacote = ByteBuffer.allocateDirect(getTamanhoDoCabecalho() + tamanhoDados);
 
-                    Integer key;
-                    Buffer buffer;
+        while (recebendo) {
+            pacote.clear();
+            canalDeRecepcao.receive(pacote);
+            pacote.flip();
 
-                    while (recebendo) {
-                        if (bufferASerGravado > quantidadeTotalDePacotes) {
-                            encerrarConexao();
-                        }
+            if (Pacote.isFimDeFluxo(pacote) && pacote.remaining() >= FimDeFluxo.TAMANHO_MAX
+                    && FimDeFluxo.getIdConexao(pacote) == idConexao) {
+                registrarFimDeFluxo(FimDeFluxo.getTamanhoArquivo(pacote));
+                continue;
+            }
+
+            if (Pacote.isReparo(pacote) && pacote.remaining() >= Reparo.TAMANHO_CABECALHO
+                    && Reparo.getIdConexao(pacote) == idConexao) {
+                setReparoNoBuffer(pacote);
+                continue;
+            }
 
-                        for (Entry<Integer, Buffer> entrySet : buffers.entrySet()) {
-                            key = entrySet.getKey();
-                            buffer = entrySet.getValue();
+            if (Pacote.isHashDoBloco(pacote) && pacote.remaining() >= HashDoBloco.TAMANHO_MIN
+                    && HashDoBloco.getIdConexao(pacote) == idConexao) {
+                setHashNoBuffer(pacote);
+                continue;
+            }
 
-                            if (buffer.isCheio() && bufferASerGravado == key) {
-                                List<Dados> lista = buffer.getPacotes();
-                                int idConexao = buffer.getIdConexao();
-                                synchronized (this) {
-                                    for (Dados p : lista) {
-                                        saida.write(p.getDados(), 0, (p.getTamanho()-p.getTamanhoCabecalho()));
+            boolean comprimido = Pacote.isDadosComprimidos(pacote);
+            if (pacote.remaining() < Dados.TAMANHO_CABECALHO || !(comprimido || Pacote.isDados(pacote))) {
+                continue;
+            }
 
-                                    }
+            if (Dados.getIdConexao(pacote) != idConexao) {
+                continue;
+            }
 
-                                    buffers.remove(key);
+            setPacoteNoBuffer(pacote, comprimido);
+        }
+    }
 
-                                    List<Integer> bufferCompleto = new ArrayList<Integer>();
-                                    bufferCompleto.add(-1);
-                                    enviarRelatorio(bufferCompleto, idConexao);
+    private boolean criarConexao(String arquivoASerRecebido) throws IOException {
+        byte[] buffer = new byte[Math.max(AceitarConexao.TAMANHO_MAX, getTamanhoDoCabecalho() + tamanhoMaximoDosPacotes)];
+        DatagramPacket resposta = new DatagramPacket(buffer, buffer.length);
+        SolicitarConexao pedidoSolicitacao = new SolicitarConexao(HOSTNAME, PORTA);
+        int tempoDeEspera = socket.getSoTimeout();
+        int tempoDeSondagem = tempoDeEspera > 0 ? Math.min(tempoDeEspera, TEMPO_DE_SONDAGEM) : TEMPO_DE_SONDAGEM;
 
-                                    bufferASerGravado += TAMANHO_BUFFER;
-                                    ultimoPacoteOrdenado = bufferASerGravado;
-                                }
+        boolean assinaturasEntregues = false;
+        int assinaturasFaltando = Integer.MAX_VALUE;
 
-                            } else if (buffer.isTimeouted()) {
-                                List<Integer> pacotesPerdidos = 
-                                	buffer.getPacotesPerdidos(key);
-                                boolean bufferPodeEnviarRelatorio = key < (bufferASerGravado + (TAMANHO_BUFFER * quantidadeDeBuffersEnviandoRelatorio));
+        System.out.println("Tentando estabelecer conexão ...");
 
-                                int idConexao = buffer.getIdConexao();
+        for (int tamanhoProposto : getTamanhosDeSondagem()) {
+            boolean sondagem = tamanhoProposto > Pacote.TAMANHO_MAX_DADOS;
+            int tentativas = sondagem ? 1 : tentativasDaConexao;
+            socket.setSoTimeout(sondagem ? tempoDeSondagem : tempoDeEspera);
 
-                                if (bufferPodeEnviarRelatorio) {
-                                    enviarRelatorio(pacotesPerdidos, idConexao);
-                                }
+            while (tentativas > 0) {
+                boolean comparando = false;
 
-                                buffer.iniciarTimeout();
+                try {
+                    if (!assinaturasEntregues) {
+                        enviarAssinaturas();
+                    }
+                    long envio = System.nanoTime();
+                    socket.send(pedidoSolicitacao.set(
+                    	arquivoASerRecebido, quantidadeDeBuffers, tamanhoProposto, pontoDeRetomada, getPortasDosCanais(), acompanhar,
+                    	compressao, verificacao, assinaturas == null ? 0 : assinaturas.getToken(), multicast));
+                    resposta.setLength(buffer.length);
+                    socket.receive(resposta);
+
+                    while (assinaturas != null && Assinaturas.isPendente(resposta.getData(), resposta.getLength(), assinaturas.getToken())) {
+                        int faltando = Assinaturas.getFaltando(resposta.getData());
+                        if (faltando > 0) {
+                            if (faltando >= assinaturasFaltando) {
+                                tentativas--;
                             }
+                            assinaturasFaltando = faltando;
+                            break;
                         }
+
+                        assinaturasEntregues = true;
+                        comparando = true;
+                        resposta.setLength(buffer.length);
+                        socket.receive(resposta);
                     }
 
-                    saida.flush();
-                    saida.close();
-                    socketResposta.close();
+                    if (!Pacote.isAceitarConexao(resposta.getData())) {
+                        continue;
+                    }
 
-                    renomearArquivo(novoArquivo);
-                } catch (FileNotFoundException ex) {
-                    Logger.getLogger(Receptor.class.getName()).log(Level.SEVERE, null, ex);
-                } catch (IOException ex) {
-                    System.err.println("Ocorreu um erro na conexão.");
-                } catch (InterruptedException ex) {
-                    System.err.println("Ocorreu um erro na conexão.");
-                }
-            }
-        }.start();
-    }
+                    AceitarConexao aceitou = new AceitarConexao(resposta.getAddress(), resposta.getPort());
+                    aceitou.set(resposta.getData(), resposta.getLength());
 
-    private synchronized void enviarRelatorio(List<Integer> pacotesPerdidos, int idConexao) throws IOException, InterruptedException {
-        int numeroDeRespostas = (int) Math.ceil(pacotesPerdidos.size() / ((double) Pacote.TAMANHO_MAX_DADOS));
-        int i, j, quantidadeDados;
+                    if (aceitou.getTamanhoDados() < Pacote.TAMANHO_MAX_DADOS
+                            || aceitou.getTamanhoDados() > tamanhoProposto
+                            || aceitou.getPacotesPorBuffer() < 1) {
+                        continue;
+                    }
 
-        for (i = 0; i < numeroDeRespostas; i++) {
-            if (pacotesPerdidos.size() >= (Pacote.TAMANHO_MAX_DADOS / Integer.BYTES)) {
-                quantidadeDados = (Pacote.TAMANHO_MAX_DADOS / Integer.BYTES);
-            } else {
-                quantidadeDados = pacotesPerdidos.size();
-            }
+                    idConexao = aceitou.getIdConexao();
+                    quantidadeTotalDePacotes = aceitou.getQuantidadePacotesPrevistos();
+                    tamanhoArquivo = aceitou.getTamanhoArquivo();
+                    tamanhoDados = aceitou.getTamanhoDados();
+                    pacotesPorBuffer = aceitou.getPacotesPorBuffer();
+                    acompanhando = aceitou.isAcompanhando();
+                    comprimindo = aceitou.isComprimindo();
+                    verificando = aceitou.isVerificando();
+                    grupo = aceitou.getGrupo();
+                    copias = assinaturas == null || aceitou.getCopias().getQuantidade() == 0 ? null : aceitou.getCopias();
+                    tamanhoFinal = -1;
+                    if (acompanhando) {
+                        quantidadeTotalDePacotes = Integer.MAX_VALUE;
+                        tamanhoArquivo = Long.MAX_VALUE;
+                    }
+                    prepararRetomada(aceitou);
+                    usarCanais(aceitou.getQuantidadeDeCanais());
+                    if (copias == null) {
+                        fecharArquivoAntigo();
+                    }
+                    atrasoDeReordenacao = Math.max(ATRASO_MINIMO_DE_REORDENACAO,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - envio) / 4);
+                    if (grupo != null) {
+                        estimadorDeRtt.amostrarEco(EstimadorDeRtt.getInstante(envio), System.nanoTime());
+                    }
 
-            ByteBuffer bb = ByteBuffer.allocate(Byte.BYTES + (2 * Integer.BYTES) + (quantidadeDados * Integer.BYTES));
-            bb.put(Flag.RELATORIO.getByte());
-            bb.putInt(idConexao);
-            bb.putInt(ultimoPacoteOrdenado);
+                    System.out.println("");
+                    System.out.println("Conexão aceita.");
 
-            int item;
-            for (j = 0; j < quantidadeDados; j++) {
-                item = pacotesPerdidos.remove(0);
-                bb.putInt(item);
+                    return true;
+                } catch (SocketTimeoutException e) {
+                    if (!comparando) {
+                        tentativas--;
+                    }
+                }
             }
-
-            byte[] bytes = bb.array();
-
-            socketResposta.send(new DatagramPacket(bytes, bytes.length, HOSTNAME, PORTA));
-            TimeUnit.MILLISECONDS.sleep(pacing);
         }
-    }
+
+        System.out.println("");
+        return false;
+    }
+
+    private void prepararDelta() {
+        assinaturas = null;
+        copias = null;
+        arquivoAntigo = null;
+
+        if (!delta || fluxo != null || acompanhar || pontoDeRetomada != null) {
+            return;
+        }
+
+        File antigo = new File((diretorio.trim()) + (arquivo.trim()));
+        if (!antigo.isFile() || antigo.length() < TabelaDeAssinaturas.TAMANHO_MINIMO_DO_BLOCO) {
+            return;
+        }
+
+        try {
+            arquivoAntigo = new RandomAccessFile(antigo, "r").getChannel();
+            assinaturas = TabelaDeAssinaturas.calcular(arquivoAntigo, arquivoAntigo.size());
+        } catch (IOException ex) {
+            assinaturas = null;
+        }
+
+        if (assinaturas == null || assinaturas.getQuantidade() == 0) {
+            assinaturas = null;
+            fecharArquivoAntigo();
+        }
+    }
+
+    private void enviarAssinaturas() throws IOException {
+        if (assinaturas == null) {
+            return;
+        }
+
+        ByteBuffer parte = ByteBuffer.allocate(Pacote.TAMANHO_MAX_DADOS);
+        DatagramPacket datagrama = new DatagramPacket(parte.array(), 0, HOSTNAME, PORTA);
+        Cadenciador cadenciadorDasAssinaturas = new Cadenciador();
+        cadenciadorDasAssinaturas.setTaxaEmBytes(TAXA_DE_ENVIO_DAS_ASSINATURAS);
+        cadenciadorDasAssinaturas.setTamanhoDoPacote(Pacote.TAMANHO_MAX_DADOS);
+
+        try {
+            for (int indice = 0; indice < assinaturas.getQuantidade(); indice += Assinaturas.ASSINATURAS_POR_PACOTE) {
+                parte.clear();
+                Assinaturas.set(parte, assinaturas, indice);
+                datagrama.setLength(parte.position());
+                cadenciadorDasAssinaturas.aguardar(parte.position());
+                socket.send(datagrama);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fecharArquivoAntigo() {
+        if (arquivoAntigo == null) {
+            return;
+        }
+
+        try {
+            arquivoAntigo.close();
+        } catch (IOException ex) {
+        }
+    }
+
+    private void prepararRetomada(AceitarConexao aceitou) {
+        if (acompanhando) {
+            pontoDeRetomada = null;
+            return;
+        }
+
+        boolean retomada = pontoDeRetomada != null && aceitou.getPacoteInicial() > 0
+                && aceitou.getPacoteInicial() == pontoDeRetomada.getPacoteInicial()
+                && pontoDeRetomada.isCompativel(tamanhoArquivo, aceitou.getDataDeModificacao(), tamanhoDados, pacotesPorBuffer);
+
+        if (!retomada) {
+            int blocos = (quantidadeTotalDePacotes + pacotesPorBuffer - 1) / pacotesPorBuffer;
+            pontoDeRetomada = new PontoDeRetomada(tamanhoArquivo, aceitou.getDataDeModificacao(), tamanhoDados, pacotesPorBuffer, blocos);
+        }
+    }
+
+    private String getCaminhoTemporario() {
+        return (diretorio.trim()) + (arquivo.trim()) + ".temp";
+    }
+
+    private int getTamanhoDoCabecalho() {
+        return Math.max(Dados.TAMANHO_CABECALHO, Reparo.TAMANHO_CABECALHO);
+    }
+
+    private List<Integer> getTamanhosDeSondagem() {
+        List<Integer> tamanhos = new ArrayList<Integer>();
+        if (pontoDeRetomada != null && pontoDeRetomada.getTamanhoDados() < tamanhoMaximoDosPacotes) {
+            tamanhos.add(pontoDeRetomada.getTamanhoDados());
+        }
+        tamanhos.add(tamanhoMaximoDosPacotes);
+
+        for (int tamanho : TAMANHOS_DE_SONDAGEM) {
+            if (tamanho < tamanhoMaximoDosPacotes) {
+                tamanhos.add(tamanho);
+            }
+        }
+
+        return tamanhos;
+    }
+
+    private void criarBuffers() {
+        int quantidadeTotalDeBuffers = acompanhando ? quantidadeDeBuffers
+                : (quantidadeTotalDePacotes + pacotesPorBuffer - 1) / pacotesPorBuffer;
+
+        buffersGravados = new AtomicLongArray((quantidadeTotalDeBuffers + 63) / 64);
+        bufferASerEntregue = 0;
+        blocoDoPrefixo = 0;
+        bytesEntreguesNoBloco = 0;
+        maioresSequenciasRecebidas = new AtomicIntegerArray(canais.length);
+        for (int i = 0; i < canais.length; i++) {
+            maioresSequenciasRecebidas.set(i, -1);
+        }
+        if (pontoDeRetomada != null && pontoDeRetomada.getPacoteInicial() > 0) {
+            pontoDeRetomada.restaurar(buffersGravados);
+            bufferASerGravado = pontoDeRetomada.getPacoteInicial();
+            while (bufferASerGravado < quantidadeTotalDePacotes && isBufferGravado(bufferASerGravado)) {
+                bufferASerGravado += pacotesPorBuffer;
+            }
+            ultimoPacoteOrdenado = Math.min(bufferASerGravado, quantidadeTotalDePacotes);
+            bufferASerEntregue = bufferASerGravado;
+            blocoDoPrefixo = bufferASerGravado;
+            for (int i = 0; i < canais.length; i++) {
+                maioresSequenciasRecebidas.set(i, ultimoPacoteOrdenado - 1);
+            }
+        }
+        buffers = new Buffer[quantidadeDeBuffers];
+        buffersCompletos = new ConcurrentLinkedQueue<Buffer>();
+        trabalhadores = comprimindo || verificando ? Trabalhadores.criar("trabalhador") : null;
+        pacotesCopiados.set(0);
+        proximaCopia = copias == null ? Integer.MAX_VALUE : copias.getProximaCopia(bufferASerGravado);
+        leituraDaCopia = copias == null ? null : ByteBuffer.allocate(tamanhoDados);
+        hashRaiz = null;
+        corrompido = false;
+        raizDoTransmissor = null;
+        if (verificando) {
+            folhas = new byte[quantidadeTotalDeBuffers * ArvoreDeHashes.TAMANHO_HASH];
+            blocosCorrompidos = new ConcurrentLinkedQueue<Integer>();
+            blocosRetomados = new long[buffersGravados.length()];
+            for (int i = 0; i < blocosRetomados.length; i++) {
+                blocosRetomados[i] = buffersGravados.get(i);
+            }
+        }
+        temporizadores = new RodaDeTemporizadores<Buffer>(TimeUnit.MILLISECONDS.toNanos(1), System.nanoTime());
+        origemDasLacunas = System.nanoTime();
+        relatorio = ByteBuffer.allocate(Relatorio.TAMANHO_CABECALHO + tamanhoDados);
+        resposta = new DatagramPacket(relatorio.array(), 0, HOSTNAME, PORTA);
+
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new Buffer(pacotesPorBuffer, tamanhoDados, temporizadores);
+            buffers[i].setTimeout(timeout);
+            buffers[i].setVerificacao(verificando);
+        }
+    }
+
+    private void setPacoteNoBuffer(ByteBuffer pacote, boolean comprimido) {
+        int sequencia = Dados.getSequencia(pacote);
+        int posicao = sequencia % pacotesPorBuffer;
+        int key = sequencia - posicao;
+
+        if (sequencia < 0 || sequencia >= quantidadeTotalDePacotes) {
+            return;
+        }
+
+        long agora = System.nanoTime();
+        estimadorDeRtt.amostrarEco(Dados.getInstanteEcoado(pacote), agora);
+        estimadorDeRtt.registrarInstante(Dados.getInstante(pacote), agora);
+
+        int recebidos = pacotesRecebidos.incrementAndGet();
+        int canalDoPacote = getCanal(key);
+        int maior = maioresSequenciasRecebidas.get(canalDoPacote);
+        if (sequencia > maior) {
+            if (sequencia > maior + 1) {
+                registrarLacuna(maior + 1, sequencia, canalDoPacote);
+            }
+            maioresSequenciasRecebidas.set(canalDoPacote, sequencia);
+        }
+
+        if (sequencia >= sequenciaDeNack && canalDoPacote == canalDaNack) {
+            synchronized (lacunas) {
+                if (sequencia >= sequenciaDeNack) {
+                    sequenciaDeNack = Integer.MAX_VALUE;
+                }
+            }
+            LockSupport.unpark(gravador);
+        }
+
+        int novosPacotes = recebidos - pacotesRecebidosNoRelatorio;
+        if (novosPacotes == 1 || novosPacotes == PACOTES_POR_RELATORIO) {
+            LockSupport.unpark(gravador);
+        }
+
+        if (isBufferObsoleto(key)) {
+            pacotesDuplicados.incrementAndGet();
+            return;
+        }
+
+        int tamanho;
+
+        if ((quantidadeTotalDePacotes - key) < pacotesPorBuffer) {
+            tamanho = (quantidadeTotalDePacotes - key);
+        } else {
+            tamanho = pacotesPorBuffer;
+        }
+
+        Buffer buffer = buffers[(key / pacotesPorBuffer) % buffers.length];
+        pacote.position(Dados.TAMANHO_CABECALHO);
+        if (acompanhando && pacote.remaining() < getTamanhoDoPacote(sequencia)) {
+            if (buffer.setParcial(key, tamanho, posicao, idConexao, pacote) && key == getBlocoEmAberto()) {
+                LockSupport.unpark(gravador);
+            }
+        } else if (comprimido ? buffer.setComprimido(key, tamanho, posicao, idConexao, pacote)
+                : buffer.set(key, tamanho, posicao, idConexao, pacote)) {
+            sinalizarBuffer(buffer, key);
+            if (acompanhando && key == getBlocoEmAberto()) {
+                LockSupport.unpark(gravador);
+            }
+        } else if (buffer.isRecebido(key, posicao)) {
+            pacotesDuplicados.incrementAndGet();
+        }
+    }
+
+    private int getTamanhoDoPacote(int sequencia) {
+        return (int) Math.min(tamanhoDados, tamanhoArquivo - (long) sequencia * tamanhoDados);
+    }
+
+    private int getBlocoEmAberto() {
+        return fluxo == null ? bufferASerGravado : bufferASerEntregue;
+    }
+
+    private void registrarFimDeFluxo(long tamanho) {
+        if (acompanhando && tamanhoFinal < 0 && tamanho >= 0) {
+            tamanhoFinal = tamanho;
+            LockSupport.unpark(gravador);
+        }
+    }
+
+    private void setReparoNoBuffer(ByteBuffer pacote) {
+        int key = Reparo.getKey(pacote);
+
+        if (key < 0 || key >= quantidadeTotalDePacotes || key % pacotesPorBuffer != 0) {
+            return;
+        }
+
+        if (isBufferObsoleto(key)) {
+            return;
+        }
+
+        int tamanho = Math.min(pacotesPorBuffer, quantidadeTotalDePacotes - key);
+        int indice = Reparo.getIndice(pacote);
+        int grupos = Reparo.getGrupos(pacote);
+
+        Buffer buffer = buffers[(key / pacotesPorBuffer) % buffers.length];
+        pacote.position(Reparo.TAMANHO_CABECALHO);
+        if (buffer.setReparo(key, tamanho, getTamanhoDoPacote(key + tamanho - 1), indice, grupos, idConexao, pacote)) {
+            sinalizarBuffer(buffer, key);
+        }
+    }
+
+    private void setHashNoBuffer(ByteBuffer pacote) {
+        int key = HashDoBloco.getKey(pacote);
+
+        if (!verificando || key < 0 || key >= quantidadeTotalDePacotes || key % pacotesPorBuffer != 0) {
+            return;
+        }
+
+        if (raizDoTransmissor == null && HashDoBloco.temRaiz(pacote)) {
+            byte[] raiz = new byte[ArvoreDeHashes.TAMANHO_HASH];
+            HashDoBloco.getRaiz(pacote, raiz);
+            raizDoTransmissor = raiz;
+        }
+
+        if (isBufferObsoleto(key)) {
+            return;
+        }
+
+        int tamanho = Math.min(pacotesPorBuffer, quantidadeTotalDePacotes - key);
+
+        Buffer buffer = buffers[(key / pacotesPorBuffer) % buffers.length];
+        if (buffer.setHash(key, tamanho, idConexao, pacote)) {
+            conferir(buffer, key);
+        }
+    }
+
+    private void registrarLacuna(int inicio, int fim, int canalDaLacuna) {
+        synchronized (lacunas) {
+            if (lacunas.isVazia()) {
+                sequenciaDeNack = fim - 1 + LIMIAR_DE_REORDENACAO;
+                canalDaNack = canalDaLacuna;
+            }
+
+            lacunas.adicionar(inicio);
+            lacunas.adicionar(fim);
+            lacunas.adicionar((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origemDasLacunas));
+        }
+    }
+
+    private void sinalizarBuffer(Buffer buffer, int key) {
+        if (buffer.isComprimido() && !isBufferObsoleto(key)) {
+            if (buffer.iniciarDescompressao()) {
+                descomprimir(buffer, key);
+            }
+            return;
+        }
+
+        if (verificando && !isBufferObsoleto(key)) {
+            if (buffer.iniciarVerificacao()) {
+                verificar(buffer, key);
+            }
+            return;
+        }
+
+        if (buffer.isCheio() || isBufferObsoleto(key)) {
+            buffersCompletos.add(buffer);
+            LockSupport.unpark(gravador);
+        }
+    }
+
+    private void descomprimir(final Buffer buffer, final int key) {
+        final int tamanhoBruto = (int) Math.min((long) pacotesPorBuffer * tamanhoDados, tamanhoArquivo - (long) key * tamanhoDados);
+
+        try {
+            trabalhadores.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (buffer.descomprimir(key, tamanhoBruto)) {
+                        sinalizarBuffer(buffer, key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+        }
+    }
+
+    private void verificar(final Buffer buffer, final int key) {
+        try {
+            trabalhadores.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (buffer.calcularHash(key)) {
+                        conferir(buffer, key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+        }
+    }
+
+    private void conferir(Buffer buffer, int key) {
+        int resultado = buffer.conferirHash(key, folhas, (key / pacotesPorBuffer) * ArvoreDeHashes.TAMANHO_HASH);
+
+        if (resultado > 0) {
+            buffersCompletos.add(buffer);
+            LockSupport.unpark(gravador);
+        } else if (resultado < 0) {
+            blocosCorrompidos.add(key);
+            LockSupport.unpark(gravador);
+        }
+    }
+
+    private void enviarRespostas() {
+        new Thread() {
+            @Override
+            public void run() {
+                long tempo = 0;
+
+                try {
+                    socketResposta = new DatagramSocket();
+
+                    String novoArquivo = null;
+                    if (fluxo == null) {
+                        novoArquivo = getCaminhoTemporario();
+                        RandomAccessFile arquivoTemporario = new RandomAccessFile(new File(novoArquivo), "rw");
+                        arquivoTemporario.setLength(acompanhando ? 0 : tamanhoArquivo);
+                        saida = arquivoTemporario.getChannel();
+                    } else {
+                        fluxo.setGravador(Thread.currentThread());
+                    }
+
+                    long timeoutDosBuffers = timeout;
+                    long retomada = System.currentTimeMillis();
+                    int gravadoNaRetomada = bufferASerGravado;
+                    long verificacaoDeBlocos = System.currentTimeMillis() + timeoutDosBuffers;
+                    gravador = Thread.currentThread();
+
+                    while (recebendo) {
+                        if (bufferASerGravado >= quantidadeTotalDePacotes || (fluxo != null && !fluxo.isOpen())) {
+                            encerrarConexao();
+                            continue;
+                        }
+
+                        Buffer completo;
+                        while ((completo = buffersCompletos.poll()) != null) {
+                            if (isBufferObsoleto(completo.getKey())) {
+                                completo.liberar();
+                            } else if (completo.isPronto() && fluxo == null) {
+                                gravarBuffer(completo);
+                                tempo = System.currentTimeMillis();
+                            }
+                        }
+
+                        if (copias != null) {
+                            preencherCopias();
+                        }
+
+                        if (verificando) {
+                            adicionarBlocosCorrompidos();
+                        }
+
+                        if (fluxo != null) {
+                            if (liberarBuffersConsumidos()) {
+                                tempo = System.currentTimeMillis();
+                            }
+                            entregarBuffers();
+                        }
+
+                        if (acompanhando) {
+                            aplicarFimDeFluxo();
+                            entregarPrefixo();
+                        }
+
+                        temporizadores.avancar(System.nanoTime());
+
+                        Temporizador<Buffer> vencido;
+                        while ((vencido = temporizadores.removerVencido()) != null) {
+                            Buffer buffer = vencido.getDono();
+                            int key = buffer.getKey();
+
+                            if (key < 0) {
+                                continue;
+                            }
+
+                            if (isBufferObsoleto(key)) {
+                                buffer.liberar();
+                                continue;
+                            }
+
+                            if (buffer.isAguardandoHash()) {
+                                adicionarFaixaAoRelatorio(key + buffer.getTamanho() - 1, 1);
+                                buffer.iniciarTimeout();
+                                continue;
+                            }
+
+                            if (buffer.isCheio()) {
+                                continue;
+                            }
+
+                            boolean bufferPodeEnviarRelatorio = key < (bufferASerGravado + (pacotesPorBuffer * quantidadeDeBuffersEnviandoRelatorio));
+
+                            if (bufferPodeEnviarRelatorio) {
+                                adicionarAoRelatorio(buffer, key);
+                            }
+
+                            buffer.iniciarTimeout();
+                        }
+
+                        adicionarLacunasVencidas();
+
+                        if (getTimeoutDosBuffers() != timeoutDosBuffers) {
+                            timeoutDosBuffers = getTimeoutDosBuffers();
+                            for (Buffer buffer : buffers) {
+                                buffer.setTimeout(timeoutDosBuffers);
+                            }
+                        }
+
+                        if (System.currentTimeMillis() >= verificacaoDeBlocos) {
+                            adicionarBlocosPerdidos();
+                            verificacaoDeBlocos = System.currentTimeMillis() + timeoutDosBuffers;
+                        }
+
+                        if (pontoDeRetomada != null && fluxo == null && bufferASerGravado != gravadoNaRetomada
+                                && System.currentTimeMillis() - retomada >= INTERVALO_DE_RETOMADA) {
+                            salvarPontoDeRetomada();
+                            gravadoNaRetomada = bufferASerGravado;
+                            retomada = System.currentTimeMillis();
+                        }
+
+                        if (relatorio.position() > 0 || isRelatorioDeProgressoPendente(tempo)) {
+                            enviarRelatorio();
+                            tempo = System.currentTimeMillis();
+                        }
+
+                        if (bufferASerGravado < quantidadeTotalDePacotes && buffersCompletos.isEmpty()) {
+                            LockSupport.parkNanos(getEsperaDoGravador(tempo, verificacaoDeBlocos));
+                        }
+                    }
+
+                    socketResposta.close();
+                    if (verificando && bufferASerGravado >= quantidadeTotalDePacotes) {
+                        corrompido = !verificarRaiz();
+                    }
+                    if (trabalhadores != null) {
+                        trabalhadores.shutdownNow();
+                    }
+
+                    if (fluxo == null) {
+                        saida.close();
+                        fecharArquivoAntigo();
+                        if (corrompido) {
+                            descartarBlocosRetomados();
+                        } else {
+                            renomearArquivo(novoArquivo);
+                            arquivoDeRetomada.delete();
+                        }
+                    } else if (corrompido) {
+                        fluxo.interromper();
+                    } else {
+                        fluxo.concluir();
+                    }
+                } catch (FileNotFoundException ex) {
+                    Logger.getLogger(Receptor.class.getName()).log(Level.SEVERE, null, ex);
+                } catch (IOException ex) {
+                    System.err.println("Ocorreu um erro na conexão.");
+                    interromperFluxo();
+                } catch (InterruptedException ex) {
+                    System.err.println("Ocorreu um erro na conexão.");
+                    interromperFluxo();
+                }
+            }
+        }.start();
+    }
+
+    private void adicionarBlocosCorrompidos() throws IOException, InterruptedException {
+        Integer key;
+
+        while ((key = blocosCorrompidos.poll()) != null) {
+            if (!isBufferObsoleto(key)) {
+                adicionarFaixaAoRelatorio(key, Math.min(pacotesPorBuffer, quantidadeTotalDePacotes - key));
+            }
+        }
+    }
+
+    private boolean verificarRaiz() throws IOException, InterruptedException {
+        int quantidade = (quantidadeTotalDePacotes + pacotesPorBuffer - 1) / pacotesPorBuffer;
+        List<Future<?>> calculos = new ArrayList<Future<?>>();
+
+        for (int i = 0; i < quantidade; i++) {
+            if ((i >>> 6) >= blocosRetomados.length || (blocosRetomados[i >>> 6] & (1L << i)) == 0) {
+                continue;
+            }
+
+            final int bloco = i;
+            calculos.add(trabalhadores.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    long posicao = (long) bloco * pacotesPorBuffer * tamanhoDados;
+                    int tamanho = (int) Math.min((long) pacotesPorBuffer * tamanhoDados, tamanhoArquivo - posicao);
+                    byte[] folha = ArvoreDeHashes.calcularFolha(saida, posicao, tamanho);
+                    System.arraycopy(folha, 0, folhas, bloco * ArvoreDeHashes.TAMANHO_HASH, folha.length);
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> calculo : calculos) {
+                calculo.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+
+        byte[] raiz = ArvoreDeHashes.calcularRaiz(folhas, quantidade);
+        if (quantidade == 0 || Arrays.equals(raiz, raizDoTransmissor)) {
+            hashRaiz = raiz;
+            return true;
+        }
+
+        System.err.println("A verificação do arquivo recebido falhou.");
+        return false;
+    }
+
+    private void descartarBlocosRetomados() {
+        for (int i = 0; i < blocosRetomados.length && i < buffersGravados.length(); i++) {
+            buffersGravados.set(i, buffersGravados.get(i) & ~blocosRetomados[i]);
+        }
+
+        int inicio = 0;
+        while (inicio < quantidadeTotalDePacotes && isBufferGravado(inicio)) {
+            inicio += pacotesPorBuffer;
+        }
+
+        if (pontoDeRetomada == null || inicio >= quantidadeTotalDePacotes) {
+            arquivoDeRetomada.delete();
+            return;
+        }
+
+        try {
+            pontoDeRetomada.atualizar(inicio, buffersGravados);
+            pontoDeRetomada.gravar(arquivoDeRetomada);
+        } catch (IOException ex) {
+            arquivoDeRetomada.delete();
+        }
+    }
+
+    private void preencherCopias() throws IOException {
+        int limite = Math.min(quantidadeTotalDePacotes, bufferASerGravado + (pacotesPorBuffer * quantidadeDeBuffers));
+
+        while (proximaCopia < limite) {
+            int key = proximaCopia - (proximaCopia % pacotesPorBuffer);
+            Buffer buffer = buffers[(key / pacotesPorBuffer) % buffers.length];
+
+            if (!isBufferObsoleto(key)) {
+                if (!buffer.isLivre() && buffer.getKey() != key) {
+                    return;
+                }
+
+                preencherBloco(buffer, key, Math.min(pacotesPorBuffer, quantidadeTotalDePacotes - key));
+            }
+
+            proximaCopia = copias.getProximaCopia(key + pacotesPorBuffer);
+        }
+    }
+
+    private void preencherBloco(Buffer buffer, int key, int tamanho) throws IOException {
+        for (int sequencia = copias.getProximaCopia(key); sequencia < key + tamanho; sequencia = copias.getProximaCopia(sequencia + 1)) {
+            long posicao = copias.getPosicao(sequencia);
+
+            leituraDaCopia.clear();
+            leituraDaCopia.limit(getTamanhoDoPacote(sequencia));
+            while (leituraDaCopia.hasRemaining() && arquivoAntigo.read(leituraDaCopia, posicao + leituraDaCopia.position()) >= 0) {
+            }
+
+            if (leituraDaCopia.hasRemaining()) {
+                continue;
+            }
+
+            leituraDaCopia.flip();
+            if (buffer.set(key, tamanho, sequencia - key, idConexao, leituraDaCopia)) {
+                pacotesCopiados.incrementAndGet();
+                sinalizarBuffer(buffer, key);
+            }
+        }
+    }
+
+    private void salvarPontoDeRetomada() {
+        try {
+            saida.force(false);
+            pontoDeRetomada.atualizar(bufferASerGravado, buffersGravados);
+            pontoDeRetomada.gravar(arquivoDeRetomada);
+        } catch (IOException ex) {
+        }
+    }
+
+    private void gravarBuffer(Buffer buffer) throws IOException, InterruptedException {
+        int key = buffer.getKey();
+
+        ByteBuffer dados = buffer.getDados();
+        long posicao = (long) key * tamanhoDados;
+        dados.limit((int) Math.min(dados.limit(), tamanhoArquivo - posicao));
+        dados.position(getBytesEntregues(key));
+        posicao += dados.position();
+        while (dados.hasRemaining()) {
+            posicao += saida.write(dados, posicao);
+        }
+
+        concluirBuffer(buffer);
+    }
+
+    private void entregarBuffers() {
+        while (bufferASerEntregue < quantidadeTotalDePacotes) {
+            Buffer buffer = buffers[(bufferASerEntregue / pacotesPorBuffer) % buffers.length];
+
+            if (buffer.getKey() != bufferASerEntregue || !buffer.isPronto()) {
+                return;
+            }
+
+            ByteBuffer dados = buffer.getDados().duplicate();
+            long posicao = (long) bufferASerEntregue * tamanhoDados;
+            dados.limit((int) Math.min(dados.limit(), tamanhoArquivo - posicao));
+            dados.position(getBytesEntregues(bufferASerEntregue));
+
+            bufferASerEntregue += pacotesPorBuffer;
+            fluxo.entregar(buffer, dados);
+        }
+
+        fluxo.concluir();
+    }
+
+    private int getBytesEntregues(int key) {
+        return key == blocoDoPrefixo ? bytesEntreguesNoBloco : 0;
+    }
+
+    private void entregarPrefixo() throws IOException {
+        int key = getBlocoEmAberto();
+
+        if (key != blocoDoPrefixo) {
+            blocoDoPrefixo = key;
+            bytesEntreguesNoBloco = 0;
+        }
+
+        if (key >= quantidadeTotalDePacotes) {
+            return;
+        }
+
+        Buffer buffer = buffers[(key / pacotesPorBuffer) % buffers.length];
+        if (buffer.getKey() != key || buffer.isCheio()) {
+            return;
+        }
+
+        int contiguos = buffer.getBytesContiguos();
+        if (contiguos <= bytesEntreguesNoBloco) {
+            return;
+        }
+
+        ByteBuffer dados = buffer.getDados(bytesEntreguesNoBloco, contiguos);
+        if (fluxo == null) {
+            long posicao = (long) key * tamanhoDados + bytesEntreguesNoBloco;
+            while (dados.hasRemaining()) {
+                posicao += saida.write(dados, posicao);
+            }
+        } else {
+            fluxo.entregar(null, dados);
+        }
+
+        bytesEntreguesNoBloco = contiguos;
+    }
+
+    private void aplicarFimDeFluxo() {
+        long tamanho = tamanhoFinal;
+
+        if (tamanho < 0) {
+            return;
+        }
+
+        if (tamanhoArquivo != tamanho) {
+            tamanhoArquivo = tamanho;
+            quantidadeTotalDePacotes = (int) ((tamanho + tamanhoDados - 1) / tamanhoDados);
+        }
+
+        int total = quantidadeTotalDePacotes;
+        if (total == 0) {
+            return;
+        }
+
+        int key = (total - 1) - ((total - 1) % pacotesPorBuffer);
+        Buffer buffer = buffers[(key / pacotesPorBuffer) % buffers.length];
+        if (buffer.limitar(key, total - key, getTamanhoDoPacote(total - 1)) && buffer.isCheio()) {
+            buffersCompletos.add(buffer);
+        }
+    }
+
+    private boolean liberarBuffersConsumidos() throws IOException, InterruptedException {
+        boolean liberou = false;
+        Buffer consumido;
+
+        while ((consumido = fluxo.removerConsumido()) != null) {
+            concluirBuffer(consumido);
+            liberou = true;
+        }
+
+        return liberou;
+    }
+
+    private void concluirBuffer(Buffer buffer) throws IOException, InterruptedException {
+        int key = buffer.getKey();
+
+        setBufferGravado(key);
+        buffer.liberar();
+
+        while (bufferASerGravado < quantidadeTotalDePacotes && isBufferGravado(bufferASerGravado)) {
+            bufferASerGravado += pacotesPorBuffer;
+        }
+        ultimoPacoteOrdenado = Math.min(bufferASerGravado, quantidadeTotalDePacotes);
+
+        enviarRelatorio();
+    }
+
+    private long getEsperaDoGravador(long ultimoRelatorio, long verificacaoDeBlocos) {
+        long agora = System.currentTimeMillis();
+        long espera = verificacaoDeBlocos - agora;
+
+        long proximoRelatorio = -1;
+        if (pacotesRecebidos.get() == 0) {
+            proximoRelatorio = ultimoRelatorio + INTERVALO_DE_CONFIRMACAO - agora;
+        } else if (pacotesRecebidos.get() != pacotesRecebidosNoRelatorio) {
+            proximoRelatorio = ultimoRelatorio + getIntervaloDeRelatorio() - agora;
+        } else if (acompanhando) {
+            proximoRelatorio = Math.max(0, ultimoRelatorio + INTERVALO_DE_MANUTENCAO - agora);
+        }
+
+        long esperaEmNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, espera));
+        long vencimento = temporizadores.getProximoVencimento();
+        if (vencimento != Long.MAX_VALUE) {
+            esperaEmNanos = Math.min(esperaEmNanos, Math.max(0, vencimento - System.nanoTime()));
+        }
+        esperaEmNanos = Math.min(esperaEmNanos, getEsperaDasLacunas());
+        if (proximoRelatorio >= 0) {
+            long esperaDoRelatorio = Math.max(TimeUnit.MILLISECONDS.toNanos(proximoRelatorio), cadenciador.getAtraso());
+            esperaEmNanos = Math.min(esperaEmNanos, esperaDoRelatorio);
+        }
+
+        return esperaEmNanos;
+    }
+
+    private long getEsperaDasLacunas() {
+        synchronized (lacunas) {
+            if (lacunas.isVazia()) {
+                return Long.MAX_VALUE;
+            }
+
+            int fim = lacunas.get(1);
+            if (maioresSequenciasRecebidas.get(getCanal(fim)) >= fim - 1 + LIMIAR_DE_REORDENACAO) {
+                return cadenciadorDeNacks.getAtraso();
+            }
+
+            long vencimento = origemDasLacunas + TimeUnit.MILLISECONDS.toNanos(lacunas.get(2) + getAtrasoDeReordenacao());
+
+            return Math.max(cadenciadorDeNacks.getAtraso(), vencimento - System.nanoTime());
+        }
+    }
+
+    private boolean isRelatorioDeProgressoPendente(long ultimoRelatorio) {
+        int recebidos = pacotesRecebidos.get();
+        int novosPacotes = recebidos - pacotesRecebidosNoRelatorio;
+        long decorrido = System.currentTimeMillis() - ultimoRelatorio;
+
+        if (cadenciador.getAtraso() > 0) {
+            return false;
+        }
+
+        if (recebidos == 0) {
+            return decorrido >= INTERVALO_DE_CONFIRMACAO;
+        }
+
+        if (acompanhando && decorrido >= INTERVALO_DE_MANUTENCAO) {
+            return true;
+        }
+
+        return novosPacotes > 0
+                && (novosPacotes >= PACOTES_POR_RELATORIO || decorrido >= getIntervaloDeRelatorio());
+    }
+
+    private long getTimeoutDosBuffers() {
+        if (!estimadorDeRtt.isAmostrado()) {
+            return timeout;
+        }
+
+        return Math.min(timeout, TimeUnit.NANOSECONDS.toMillis(estimadorDeRtt.getRto()));
+    }
+
+    private long getIntervaloDeRelatorio() {
+        if (!estimadorDeRtt.isAmostrado()) {
+            return INTERVALO_DE_RELATORIO;
+        }
+
+        return Math.max(1, Math.min(INTERVALO_DE_CONFIRMACAO, TimeUnit.NANOSECONDS.toMillis(estimadorDeRtt.getSrtt() / 4)));
+    }
+
+    private long getAtrasoDeReordenacao() {
+        if (!estimadorDeRtt.isAmostrado()) {
+            return atrasoDeReordenacao;
+        }
+
+        return Math.max(ATRASO_MINIMO_DE_REORDENACAO, TimeUnit.NANOSECONDS.toMillis(estimadorDeRtt.getSrtt() / 4));
+    }
+
+    private void adicionarLacunasVencidas() throws IOException, InterruptedException {
+        long agora = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origemDasLacunas);
+
+        while (true) {
+            int inicio;
+            int fim;
+
+            synchronized (lacunas) {
+                if (lacunas.isVazia()) {
+                    sequenciaDeNack = Integer.MAX_VALUE;
+                    return;
+                }
+
+                inicio = lacunas.get(0);
+                fim = lacunas.get(1);
+
+                boolean reordenada = maioresSequenciasRecebidas.get(getCanal(fim)) >= fim - 1 + LIMIAR_DE_REORDENACAO;
+                boolean atrasada = agora - lacunas.get(2) >= getAtrasoDeReordenacao();
+
+                if (!reordenada && !atrasada) {
+                    sequenciaDeNack = fim - 1 + LIMIAR_DE_REORDENACAO;
+                    canalDaNack = getCanal(fim);
+                    return;
+                }
+
+                if (cadenciadorDeNacks.getAtraso() > 0) {
+                    return;
+                }
+
+                lacunas.remover();
+                lacunas.remover();
+                lacunas.remover();
+            }
+
+            cadenciadorDeNacks.consumir(adicionarPerdidosDaLacuna(inicio, fim));
+        }
+    }
+
+    private int adicionarPerdidosDaLacuna(int inicio, int fim) throws IOException, InterruptedException {
+        int limite = Math.min(fim, bufferASerGravado + (pacotesPorBuffer * quantidadeDeBuffersEnviandoRelatorio));
+        int canalDaLacuna = getCanal(fim);
+        int inicioDaFaixa = -1;
+        int perdidos = 0;
+
+        for (int sequencia = inicio; sequencia <= limite; sequencia++) {
+            boolean perdido = sequencia < limite && getCanal(sequencia) == canalDaLacuna && isPacotePerdido(sequencia);
+
+            if (perdido && inicioDaFaixa < 0) {
+                inicioDaFaixa = sequencia;
+            } else if (!perdido && inicioDaFaixa >= 0) {
+                adicionarFaixaAoRelatorio(inicioDaFaixa, sequencia - inicioDaFaixa);
+                perdidos += sequencia - inicioDaFaixa;
+                inicioDaFaixa = -1;
+            }
+        }
+
+        return perdidos;
+    }
+
+    private boolean isPacotePerdido(int sequencia) {
+        int posicao = sequencia % pacotesPorBuffer;
+        int key = sequencia - posicao;
+
+        if (isBufferObsoleto(key) || (copias != null && copias.contem(sequencia))) {
+            return false;
+        }
+
+        return !buffers[(key / pacotesPorBuffer) % buffers.length].isRecebido(key, posicao);
+    }
+
+    private void adicionarFaixaAoRelatorio(int base, int quantidade) throws IOException, InterruptedException {
+        while (quantidade > 0) {
+            int faixa = Math.min(quantidade, 0xFFFF);
+
+            if (relatorio.position() == 0) {
+                relatorio.position(Relatorio.TAMANHO_CABECALHO);
+            }
+
+            if (!Relatorio.putPacotesPerdidos(relatorio, base, faixa)) {
+                enviarRelatorio();
+                relatorio.position(Relatorio.TAMANHO_CABECALHO);
+                Relatorio.putPacotesPerdidos(relatorio, base, faixa);
+            }
+
+            base += faixa;
+            quantidade -= faixa;
+        }
+    }
+
+    private void adicionarAoRelatorio(Buffer buffer, int key) throws IOException, InterruptedException {
+        if (relatorio.position() == 0) {
+            relatorio.position(Relatorio.TAMANHO_CABECALHO);
+        }
+
+        if (!buffer.putPacotesPerdidos(relatorio, key)) {
+            enviarRelatorio();
+            relatorio.position(Relatorio.TAMANHO_CABECALHO);
+            buffer.putPacotesPerdidos(relatorio, key);
+        }
+    }
+
+    private int getCanal(int sequencia) {
+        return (sequencia / pacotesPorBuffer) % maioresSequenciasRecebidas.length();
+    }
+
+    private int getMaiorSequenciaRecebida() {
+        int maior = -1;
+
+        for (int i = 0; i < maioresSequenciasRecebidas.length(); i++) {
+            maior = Math.max(maior, maioresSequenciasRecebidas.get(i));
+        }
+
+        return maior;
+    }
+
+    private boolean isBufferObsoleto(int key) {
+        return key < bufferASerGravado || isBufferGravado(key);
+    }
+
+    private boolean isBufferGravado(int key) {
+        int indice = key / pacotesPorBuffer;
+
+        AtomicLongArray gravados = buffersGravados;
+
+        return (indice >>> 6) < gravados.length() && (gravados.get(indice >>> 6) & (1L << indice)) != 0;
+    }
+
+    private void setBufferGravado(int key) {
+        int indice = key / pacotesPorBuffer;
+        long palavra;
+
+        if ((indice >>> 6) >= buffersGravados.length()) {
+            AtomicLongArray maior = new AtomicLongArray(Math.max((indice >>> 6) + 1, buffersGravados.length() * 2));
+            for (int i = 0; i < buffersGravados.length(); i++) {
+                maior.set(i, buffersGravados.get(i));
+            }
+            buffersGravados = maior;
+        }
+
+        do {
+            palavra = buffersGravados.get(indice >>> 6);
+        } while (!buffersGravados.compareAndSet(indice >>> 6, palavra, palavra | (1L << indice)));
+    }
+
+    private void adicionarBlocosPerdidos() throws IOException, InterruptedException {
+        int limite = Math.min(quantidadeTotalDePacotes, bufferASerGravado + (pacotesPorBuffer * quantidadeDeBuffersEnviandoRelatorio));
+
+        for (int key = bufferASerGravado; key < limite; key += pacotesPorBuffer) {
+            int maiorDoCanal = maioresSequenciasRecebidas.get(getCanal(key));
+
+            if (key > maiorDoCanal - (maiorDoCanal % pacotesPorBuffer) - pacotesPorBuffer) {
+                continue;
+            }
+
+            if (isBufferGravado(key) || buffers[(key / pacotesPorBuffer) % buffers.length].getKey() == key) {
+                continue;
+            }
+
+            if (copias != null && copias.contem(key, key + pacotesPorBuffer)) {
+                continue;
+            }
+
+            adicionarFaixaAoRelatorio(key, Math.min(pacotesPorBuffer, quantidadeTotalDePacotes - key));
+        }
+    }
+
+    private synchronized void enviarRelatorio() throws IOException, InterruptedException {
+        int tamanho = Math.max(relatorio.position(), Relatorio.TAMANHO_CABECALHO);
+
+        cadenciador.aguardar(tamanho);
+
+        long agora = System.nanoTime();
+        pacotesRecebidosNoRelatorio = pacotesRecebidos.get();
+        relatorio.position(0);
+        Relatorio.setCabecalho(relatorio, idConexao, ultimoPacoteOrdenado, getMaiorSequenciaRecebida(), pacotesRecebidosNoRelatorio,
+                EstimadorDeRtt.getInstante(agora), estimadorDeRtt.removerEco(agora));
+        resposta.setLength(tamanho);
+
+        if (canalDoGrupo == null) {
+            socketResposta.send(resposta);
+        } else {
+            socket.send(resposta);
+        }
+        relatorio.clear();
+    }
 
     private void renomearArquivo(String caminho) {
         File arquivo = new File(caminho);
@@ -513,15 +2075,21 @@ public class Receptor {
         EncerrarConexao encerrar = new EncerrarConexao(HOSTNAME, PORTA);
 
         for (int i = 0; i < tentativasDaConexao; i++) {
+            cadenciador.aguardar(EncerrarConexao.TAMANHO_MAX);
             try {
                 socket.send(encerrar.set(idConexao));
             } catch (IOException ex) {
             }
-            TimeUnit.MILLISECONDS.sleep(pacing);
         }
 
         ultimoPacoteOrdenado = quantidadeTotalDePacotes;
         recebendo = false;
+
+        try {
+            canal.close();
+        } catch (IOException ex) {
+        }
+        fecharCanais();
     }
 
 }
@@ -18,19 +18,30 @@ package lstreamer;
 
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
 class Relatorio extends Pacote {
 
-    static final int TAMANHO_MAX = Byte.BYTES+(2*Integer.BYTES)+Pacote.TAMANHO_MAX_DADOS;
+    static final int TAMANHO_CABECALHO = Byte.BYTES+(6*Integer.BYTES);
+    static final int TAMANHO_MAX = TAMANHO_CABECALHO+Pacote.TAMANHO_MAX_DADOS;
+    static final int TAMANHO_CABECALHO_SECAO = (2*Byte.BYTES)+Integer.BYTES+Short.BYTES;
+    
+    private static final byte SECAO_FAIXAS = 0;
+    private static final byte SECAO_MAPA = 1;
+    private static final int MAXIMO_DE_PACOTES_PERDIDOS = 1 << 16;
     
     private int idConexao;
     private int ultimoPacoteOrdenado;
-    private List<Integer> pacotesPerdidos;
+    private int maiorSequenciaRecebida;
+    private int pacotesRecebidos;
+    private int instante;
+    private int instanteEcoado;
+    private int[] pacotesPerdidos;
+    private int quantidadeDePacotesPerdidos;
     
     Relatorio(InetAddress HOSTNAME, int PORTA) {
         super(HOSTNAME, PORTA, Flag.RELATORIO.getByte());
+        this.pacotesPerdidos = new int[Pacote.TAMANHO_MAX_DADOS];
+        this.quantidadeDePacotesPerdidos = 0;
     }
 
     int getIdConexao() {
@@ -49,23 +60,177 @@ class Relatorio extends Pacote {
         this.ultimoPacoteOrdenado = ultimoPacoteOrdenado;
     }
 
-    List<Integer> getPacotesPerdidos() {
+    int getMaiorSequenciaRecebida() {
+        return maiorSequenciaRecebida;
+    }
+
+    int getPacotesRecebidos() {
+        return pacotesRecebidos;
+    }
+
+    int getInstante() {
+        return instante;
+    }
+
+    int getInstanteEcoado() {
+        return instanteEcoado;
+    }
+
+    int[] getPacotesPerdidos() {
         return pacotesPerdidos;
     }
 
+    int getQuantidadeDePacotesPerdidos() {
+        return quantidadeDePacotesPerdidos;
+    }
+
+    static void setCabecalho(ByteBuffer relatorio, int idConexao, int ultimoPacoteOrdenado, int maiorSequenciaRecebida, int pacotesRecebidos,
+            int instante, int instanteEcoado) {
+        relatorio.put(Flag.RELATORIO.getByte());
+        relatorio.putInt(idConexao);
+        relatorio.putInt(ultimoPacoteOrdenado);
+        relatorio.putInt(maiorSequenciaRecebida);
+        relatorio.putInt(pacotesRecebidos);
+        relatorio.putInt(instante);
+        relatorio.putInt(instanteEcoado);
+    }
+
+    static boolean putPacotesPerdidos(ByteBuffer relatorio, int base, long[] recebidos, int tamanho) {
+        int perdidos = 0;
+        int faixas = 0;
+        boolean anteriorPerdido = false;
+
+        for (int i = 0; i < tamanho; i++) {
+            boolean perdido = !isMarcado(recebidos, i);
+            if (perdido) {
+                perdidos++;
+                if (!anteriorPerdido) {
+                    faixas++;
+                }
+            }
+            anteriorPerdido = perdido;
+        }
+
+        if (perdidos == 0) {
+            return true;
+        }
+
+        int bytesFaixas = faixas * 2 * Short.BYTES;
+        int bytesMapa = (tamanho + 7) / 8;
+
+        if (relatorio.remaining() < TAMANHO_CABECALHO_SECAO + Math.min(bytesFaixas, bytesMapa)) {
+            return false;
+        }
+
+        if (bytesFaixas <= bytesMapa) {
+            relatorio.put(SECAO_FAIXAS);
+            relatorio.putInt(base);
+            relatorio.putShort((short) faixas);
+            relatorio.put((byte) 0);
+
+            int inicio = -1;
+            for (int i = 0; i <= tamanho; i++) {
+                boolean perdido = i < tamanho && !isMarcado(recebidos, i);
+                if (perdido && inicio < 0) {
+                    inicio = i;
+                } else if (!perdido && inicio >= 0) {
+                    relatorio.putShort((short) inicio);
+                    relatorio.putShort((short) (i - inicio));
+                    inicio = -1;
+                }
+            }
+        } else {
+            relatorio.put(SECAO_MAPA);
+            relatorio.putInt(base);
+            relatorio.putShort((short) tamanho);
+            relatorio.put((byte) 0);
+
+            for (int i = 0; i < tamanho; i += 8) {
+                int octeto = 0;
+                for (int j = 0; j < 8 && i + j < tamanho; j++) {
+                    if (!isMarcado(recebidos, i + j)) {
+                        octeto |= 1 << j;
+                    }
+                }
+                relatorio.put((byte) octeto);
+            }
+        }
+
+        return true;
+    }
+
+    static boolean putPacotesPerdidos(ByteBuffer relatorio, int base, int quantidade) {
+        if (relatorio.remaining() < TAMANHO_CABECALHO_SECAO + (2 * Short.BYTES)) {
+            return false;
+        }
+
+        relatorio.put(SECAO_FAIXAS);
+        relatorio.putInt(base);
+        relatorio.putShort((short) 1);
+        relatorio.put((byte) 0);
+        relatorio.putShort((short) 0);
+        relatorio.putShort((short) quantidade);
+
+        return true;
+    }
+
     void set(byte[] dados, int tamanhoDados) {
         ByteBuffer byteBuffer = ByteBuffer.wrap(dados, 0, tamanhoDados);
-        byteBuffer.clear();
         
         flag = byteBuffer.get();
         idConexao = byteBuffer.getInt();
         ultimoPacoteOrdenado = byteBuffer.getInt();
+        maiorSequenciaRecebida = byteBuffer.getInt();
+        pacotesRecebidos = byteBuffer.getInt();
+        instante = byteBuffer.getInt();
+        instanteEcoado = byteBuffer.getInt();
         
-        pacotesPerdidos = new ArrayList<Integer>();
-        while (byteBuffer.position() < tamanhoDados) {
-            pacotesPerdidos.add(byteBuffer.getInt());
-            int a = 1;
+        quantidadeDePacotesPerdidos = 0;
+        while (byteBuffer.remaining() >= TAMANHO_CABECALHO_SECAO) {
+            byte tipo = byteBuffer.get();
+            int base = byteBuffer.getInt();
+            int quantidade = byteBuffer.getShort() & 0xFFFF;
+            byteBuffer.get();
+
+            if (tipo == SECAO_FAIXAS) {
+                for (int i = 0; i < quantidade && byteBuffer.remaining() >= 2 * Short.BYTES; i++) {
+                    int inicio = base + (byteBuffer.getShort() & 0xFFFF);
+                    int comprimento = byteBuffer.getShort() & 0xFFFF;
+                    for (int j = 0; j < comprimento; j++) {
+                        adicionarPacotePerdido(inicio + j);
+                    }
+                }
+            } else if (tipo == SECAO_MAPA) {
+                for (int i = 0; i < quantidade && byteBuffer.hasRemaining(); i += 8) {
+                    int octeto = byteBuffer.get();
+                    for (int j = 0; j < 8 && i + j < quantidade; j++) {
+                        if ((octeto & (1 << j)) != 0) {
+                            adicionarPacotePerdido(base + i + j);
+                        }
+                    }
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void adicionarPacotePerdido(int sequencia) {
+        if (quantidadeDePacotesPerdidos >= MAXIMO_DE_PACOTES_PERDIDOS) {
+            return;
         }
+
+        if (quantidadeDePacotesPerdidos == pacotesPerdidos.length) {
+            int[] maior = new int[pacotesPerdidos.length * 2];
+            System.arraycopy(pacotesPerdidos, 0, maior, 0, quantidadeDePacotesPerdidos);
+            pacotesPerdidos = maior;
+        }
+
+        pacotesPerdidos[quantidadeDePacotesPerdidos++] = sequencia;
+    }
+
+    private static boolean isMarcado(long[] mapa, int indice) {
+        return (mapa[indice >>> 6] & (1L << indice)) != 0;
     }
 
 }
@@ -0,0 +1,82 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+class Reparo extends Pacote {
+
+    static final int TAMANHO_CABECALHO = Byte.BYTES+(2*Integer.BYTES)+(2*Short.BYTES);
+    static final double REDUNDANCIA_MAXIMA = 0.25;
+    
+    Reparo(InetAddress hostname, int porta) {
+        super(hostname, porta, Flag.REPARO.getByte());
+    }
+
+    static void setCabecalho(ByteBuffer pacote, int idConexao, int key, int indice, int grupos) {
+        pacote.put(Flag.REPARO.getByte());
+        pacote.putInt(idConexao);
+        pacote.putInt(key);
+        pacote.putShort((short) indice);
+        pacote.putShort((short) grupos);
+    }
+
+    static int getIdConexao(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES);
+    }
+
+    static int getKey(ByteBuffer pacote) {
+        return pacote.getInt(Byte.BYTES+Integer.BYTES);
+    }
+
+    static int getIndice(ByteBuffer pacote) {
+        return pacote.getShort(Byte.BYTES+(2*Integer.BYTES)) & 0xFFFF;
+    }
+
+    static int getGrupos(ByteBuffer pacote) {
+        return pacote.getShort(Byte.BYTES+(2*Integer.BYTES)+Short.BYTES) & 0xFFFF;
+    }
+
+    static int getGrupos(int tamanhoDoBloco, double redundancia) {
+        if (redundancia <= 0 || tamanhoDoBloco < 1) {
+            return 0;
+        }
+
+        int grupos = (int) Math.ceil(tamanhoDoBloco * Math.min(redundancia, REDUNDANCIA_MAXIMA));
+
+        return Math.min(grupos, getMaximoDeGrupos(tamanhoDoBloco));
+    }
+
+    static int getMaximoDeGrupos(int tamanhoDoBloco) {
+        return Math.max(1, (int) Math.ceil(tamanhoDoBloco * REDUNDANCIA_MAXIMA));
+    }
+
+    static void combinar(ByteBuffer destino, int posicaoDestino, ByteBuffer origem, int posicaoOrigem, int tamanho) {
+        int i = 0;
+
+        for (; i + Long.BYTES <= tamanho; i += Long.BYTES) {
+            destino.putLong(posicaoDestino + i, destino.getLong(posicaoDestino + i) ^ origem.getLong(posicaoOrigem + i));
+        }
+
+        for (; i < tamanho; i++) {
+            destino.put(posicaoDestino + i, (byte) (destino.get(posicaoDestino + i) ^ origem.get(posicaoOrigem + i)));
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+class RodaDeTemporizadores<T> {
+
+    private static final int BITS_POR_NIVEL = 6;
+    private static final int POSICOES_POR_NIVEL = 1 << BITS_POR_NIVEL;
+    private static final int MASCARA = POSICOES_POR_NIVEL - 1;
+    private static final int NIVEIS = (Long.SIZE + BITS_POR_NIVEL - 1) / BITS_POR_NIVEL;
+
+    private final long RESOLUCAO;
+    private final long ORIGEM;
+
+    private Temporizador<T>[] posicoes;
+    private long[] ocupadas;
+    private Temporizador<T> vencidos;
+    private long tick;
+    private int quantidade;
+
+    @SuppressWarnings("unchecked")
+    RodaDeTemporizadores(long resolucao, long agora) {
+        this.RESOLUCAO = Math.max(1, resolucao);
+        this.ORIGEM = agora;
+        this.posicoes = (Temporizador<T>[]) new Temporizador<?>[NIVEIS * POSICOES_POR_NIVEL];
+        this.ocupadas = new long[NIVEIS];
+        this.vencidos = null;
+        this.tick = 0;
+        this.quantidade = 0;
+    }
+
+    synchronized int getQuantidade() {
+        return quantidade;
+    }
+
+    synchronized void agendar(Temporizador<T> temporizador, long prazo) {
+        if (temporizador.isAgendado()) {
+            remover(temporizador);
+        } else {
+            quantidade++;
+        }
+
+        temporizador.prazo = getTick(prazo);
+        inserir(temporizador);
+    }
+
+    synchronized void cancelar(Temporizador<T> temporizador) {
+        if (temporizador.isAgendado()) {
+            remover(temporizador);
+            temporizador.posicao = Temporizador.DESATIVADO;
+            quantidade--;
+        }
+    }
+
+    synchronized void avancar(long agora) {
+        long alvo = Math.max(0, (agora - ORIGEM) / RESOLUCAO);
+
+        while (tick < alvo) {
+            long seguinte = getProximoTick();
+
+            if (seguinte > alvo) {
+                tick = alvo;
+                return;
+            }
+
+            tick = seguinte;
+            if ((tick & MASCARA) == 0) {
+                cascatear();
+            }
+
+            vencer((int) (tick & MASCARA));
+        }
+    }
+
+    synchronized Temporizador<T> removerVencido() {
+        Temporizador<T> temporizador = vencidos;
+
+        if (temporizador != null) {
+            remover(temporizador);
+            temporizador.posicao = Temporizador.DESATIVADO;
+            quantidade--;
+        }
+
+        return temporizador;
+    }
+
+    synchronized long getProximoVencimento() {
+        if (vencidos != null) {
+            return ORIGEM + tick * RESOLUCAO;
+        }
+
+        long seguinte = getProximoTick();
+
+        return seguinte == Long.MAX_VALUE ? Long.MAX_VALUE : ORIGEM + seguinte * RESOLUCAO;
+    }
+
+    private long getTick(long prazo) {
+        long decorrido = Math.max(0, prazo - ORIGEM);
+
+        return (decorrido + RESOLUCAO - 1) / RESOLUCAO;
+    }
+
+    private long getProximoTick() {
+        for (int nivel = 0; nivel < NIVEIS; nivel++) {
+            int deslocamento = nivel * BITS_POR_NIVEL;
+            int atual = (int) ((tick >>> deslocamento) & MASCARA);
+            long seguintes = atual == MASCARA ? 0 : ocupadas[nivel] >>> (atual + 1);
+
+            if (seguintes != 0) {
+                long grupo = (tick >>> deslocamento) + 1 + Long.numberOfTrailingZeros(seguintes);
+
+                return grupo << deslocamento;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    private void inserir(Temporizador<T> temporizador) {
+        if (temporizador.prazo <= tick) {
+            temporizador.posicao = Temporizador.VENCIDO;
+            temporizador.anterior = null;
+            temporizador.proximo = vencidos;
+            if (vencidos != null) {
+                vencidos.anterior = temporizador;
+            }
+            vencidos = temporizador;
+            return;
+        }
+
+        int nivel = (Long.SIZE - 1 - Long.numberOfLeadingZeros(temporizador.prazo ^ tick)) / BITS_POR_NIVEL;
+        int indice = (int) ((temporizador.prazo >>> (nivel * BITS_POR_NIVEL)) & MASCARA);
+        int posicao = nivel * POSICOES_POR_NIVEL + indice;
+
+        temporizador.posicao = posicao;
+        temporizador.anterior = null;
+        temporizador.proximo = posicoes[posicao];
+        if (posicoes[posicao] != null) {
+            posicoes[posicao].anterior = temporizador;
+        }
+        posicoes[posicao] = temporizador;
+        ocupadas[nivel] |= 1L << indice;
+    }
+
+    private void remover(Temporizador<T> temporizador) {
+        if (temporizador.anterior != null) {
+            temporizador.anterior.proximo = temporizador.proximo;
+        } else if (temporizador.posicao == Temporizador.VENCIDO) {
+            vencidos = temporizador.proximo;
+        } else {
+            posicoes[temporizador.posicao] = temporizador.proximo;
+            if (temporizador.proximo == null) {
+                ocupadas[temporizador.posicao / POSICOES_POR_NIVEL] &= ~(1L << (temporizador.posicao & MASCARA));
+            }
+        }
+
+        if (temporizador.proximo != null) {
+            temporizador.proximo.anterior = temporizador.anterior;
+        }
+
+        temporizador.anterior = null;
+        temporizador.proximo = null;
+    }
+
+    private void cascatear() {
+        int nivel = 1;
+        while (nivel < NIVEIS - 1 && ((tick >>> (nivel * BITS_POR_NIVEL)) & MASCARA) == 0) {
+            nivel++;
+        }
+
+        for (; nivel >= 1; nivel--) {
+            int indice = (int) ((tick >>> (nivel * BITS_POR_NIVEL)) & MASCARA);
+            int posicao = nivel * POSICOES_POR_NIVEL + indice;
+            Temporizador<T> temporizador = posicoes[posicao];
+
+            posicoes[posicao] = null;
+            ocupadas[nivel] &= ~(1L << indice);
+
+            while (temporizador != null) {
+                Temporizador<T> seguinte = temporizador.proximo;
+                inserir(temporizador);
+                temporizador = seguinte;
+            }
+        }
+    }
+
+    private void vencer(int indice) {
+        Temporizador<T> temporizador = posicoes[indice];
+
+        posicoes[indice] = null;
+        ocupadas[0] &= ~(1L << indice);
+
+        while (temporizador != null) {
+            Temporizador<T> seguinte = temporizador.proximo;
+            temporizador.prazo = tick;
+            inserir(temporizador);
+            temporizador = seguinte;
+        }
+    }
+
+}
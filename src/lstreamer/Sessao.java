@@ -0,0 +1,996 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class Sessao {
+
+    private static final long RTO_INICIAL = TimeUnit.SECONDS.toNanos(1);
+    private static final long RTO_MINIMO = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long RTO_MAXIMO = TimeUnit.SECONDS.toNanos(60);
+    private static final double FATOR_DE_REDUNDANCIA = 3;
+    private static final long SUPRESSAO_MINIMA = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int ID_CONEXAO;
+    private final InetSocketAddress ENDERECO;
+    private final String ARQUIVO;
+    private final int TAMANHO_DADOS;
+    private final int PACOTES_POR_BUFFER;
+    private final Temporizador<Sessao> TEMPORIZADOR;
+
+    private ArquivoMapeado arquivo;
+    private BlocosComprimidos blocos;
+    private ArvoreDeHashes arvore;
+    private FilaDeInteiros hashesPendentes;
+    private ByteBuffer hash;
+    private Copias copias;
+    private JanelaDeEnvio janela;
+    private int quantidadeDePacotes;
+    private int tamanhoJanela;
+    private int ultimoPacoteOrdenado;
+    private int proximoPacote;
+    private int pacoteInicial;
+    private SolicitarConexao retomada;
+    private int pacotePerdido;
+    private boolean envioUnico;
+    private int numeroDeReenvios;
+    private int reenviosDoPacote;
+    private Queue<InetSocketAddress> aceitesPendentes;
+    private ByteBuffer aceite;
+    private Map<InetSocketAddress, Membro> membros;
+    private ByteBuffer envio;
+    private ByteBuffer reparo;
+    private CanalDeEnvio[] canais;
+    private CanalDeEnvio canalCheio;
+    private Cadenciador cadenciador;
+    private ControleDeCongestionamento controle;
+    private int maiorSequenciaEnviada;
+    private long pacotesEnviados;
+    private long pacotesReenviados;
+    private long pacotesDeReparo;
+    private double redundancia;
+    private boolean redundanciaAdaptativa;
+    private double taxaDePerda;
+    private int ultimoBlocoComReparo;
+    private int blocoDoReparo;
+    private int gruposDoReparo;
+    private int proximoReparo;
+    private boolean reparoMontado;
+    private EstimadorDeRtt estimadorDeRtt;
+    private long rto;
+    private RodaDeTemporizadores<Sessao> temporizadores;
+    private int pacotesEntregues;
+    private long perdasContabilizadas;
+    private int marcador;
+    private long envioDoMarcador;
+    private long enviadosNoMarcador;
+    private long enviadosNaRodadaAnterior;
+    private int entreguesNoMarcador;
+    private boolean marcadorReenviado;
+    private boolean confirmada;
+    private long ultimaAtividade;
+    private boolean acompanhando;
+    private int maiorSequenciaConfirmada;
+    private boolean fluxoFinalizado;
+    private boolean fimPendente;
+    private long envioDoFim;
+    private ByteBuffer fim;
+
+    Sessao(int idConexao, InetSocketAddress endereco, String arquivo, int tamanhoDados, int pacotesPorBuffer, int quantidadeDeBuffers) {
+        this.ID_CONEXAO = idConexao;
+        this.ENDERECO = endereco;
+        this.ARQUIVO = arquivo;
+        this.TAMANHO_DADOS = tamanhoDados;
+        this.PACOTES_POR_BUFFER = pacotesPorBuffer;
+        this.TEMPORIZADOR = new Temporizador<Sessao>(this);
+        this.tamanhoJanela = pacotesPorBuffer * quantidadeDeBuffers;
+        this.quantidadeDePacotes = 0;
+        this.ultimoPacoteOrdenado = -1;
+        this.proximoPacote = 0;
+        this.pacoteInicial = 0;
+        this.pacotePerdido = -1;
+        this.envioUnico = true;
+        this.numeroDeReenvios = 1;
+        this.reenviosDoPacote = 0;
+        this.aceitesPendentes = new ArrayDeque<InetSocketAddress>();
+        this.envio = ByteBuffer.allocateDirect(Dados.TAMANHO_CABECALHO + tamanhoDados);
+        this.maiorSequenciaEnviada = -1;
+        this.pacotesEnviados = 0;
+        this.pacotesReenviados = 0;
+        this.pacotesDeReparo = 0;
+        this.redundancia = 0;
+        this.redundanciaAdaptativa = false;
+        this.taxaDePerda = 0;
+        this.ultimoBlocoComReparo = -1;
+        this.gruposDoReparo = 0;
+        this.estimadorDeRtt = new EstimadorDeRtt(RTO_MINIMO, RTO_MAXIMO);
+        this.rto = RTO_INICIAL;
+        this.pacotesEntregues = 0;
+        this.perdasContabilizadas = 0;
+        this.marcador = -1;
+        this.confirmada = false;
+        this.ultimaAtividade = System.currentTimeMillis();
+        this.acompanhando = false;
+        this.maiorSequenciaConfirmada = -1;
+        this.fluxoFinalizado = false;
+        this.fimPendente = false;
+    }
+
+    int getIdConexao() {
+        return ID_CONEXAO;
+    }
+
+    InetSocketAddress getEndereco() {
+        return ENDERECO;
+    }
+
+    String getArquivo() {
+        return ARQUIVO;
+    }
+
+    int getTamanhoDados() {
+        return TAMANHO_DADOS;
+    }
+
+    int getTamanhoDoBloco() {
+        return PACOTES_POR_BUFFER * TAMANHO_DADOS;
+    }
+
+    long getTamanhoArquivo() {
+        return arquivo.getTamanho();
+    }
+
+    long getDataDeModificacao() {
+        return arquivo.getDataDeModificacao();
+    }
+
+    long getUltimaAtividade() {
+        return ultimaAtividade;
+    }
+
+    int getTamanhoDaJanela() {
+        return tamanhoJanela;
+    }
+
+    Cadenciador getCadenciador() {
+        return cadenciador;
+    }
+
+    void setCadenciador(Cadenciador cadenciador) {
+        this.cadenciador = cadenciador;
+        this.cadenciador.setTamanhoDoPacote(Dados.TAMANHO_CABECALHO + TAMANHO_DADOS);
+    }
+
+    void setControleDeCongestionamento(ControleDeCongestionamento controle) {
+        this.controle = controle;
+        controle.iniciar(TAMANHO_DADOS);
+        cadenciador.setTaxaEmBytes(controle.getTaxa());
+    }
+
+    void setEnvioUnico(boolean envioUnico) {
+        this.envioUnico = envioUnico;
+    }
+
+    long getPacotesEnviados() {
+        return pacotesEnviados;
+    }
+
+    long getPacotesReenviados() {
+        return pacotesReenviados;
+    }
+
+    long getPacotesDeReparo() {
+        return pacotesDeReparo;
+    }
+
+    void setRedundancia(double redundancia, boolean adaptativa) {
+        this.redundancia = redundancia;
+        this.redundanciaAdaptativa = adaptativa;
+    }
+
+    boolean isReparoAtivo() {
+        return redundancia > 0 || redundanciaAdaptativa;
+    }
+
+    void setAcompanhamento(boolean acompanhando) {
+        this.acompanhando = acompanhando;
+    }
+
+    boolean isAcompanhando() {
+        return acompanhando;
+    }
+
+    void setRodaDeTemporizadores(RodaDeTemporizadores<Sessao> temporizadores) {
+        this.temporizadores = temporizadores;
+    }
+
+    void setNumeroDeReenvios(int numeroDeReenvios) {
+        this.numeroDeReenvios = numeroDeReenvios;
+    }
+
+    void abrir(String caminho) throws IOException {
+        arquivo = new ArquivoMapeado(caminho, TAMANHO_DADOS);
+        quantidadeDePacotes = arquivo.getQuantidadeDePacotes();
+        janela = new JanelaDeEnvio(tamanhoJanela, quantidadeDePacotes);
+    }
+
+    void comprimir(ExecutorService trabalhadores, Selector seletor, CacheDeBlocos cache, String caminho) {
+        blocos = new BlocosComprimidos(arquivo, TAMANHO_DADOS, PACOTES_POR_BUFFER, tamanhoJanela / PACOTES_POR_BUFFER,
+                trabalhadores, seletor, cache, CacheDeBlocos.getPrefixo(caminho, arquivo.getTamanho(),
+                arquivo.getDataDeModificacao(), TAMANHO_DADOS, PACOTES_POR_BUFFER));
+        blocos.preparar(janela.getInicio(), janela.getFim());
+    }
+
+    boolean isComprimindo() {
+        return blocos != null;
+    }
+
+    void verificar(ArvoreDeHashes arvore) {
+        this.arvore = arvore;
+        this.hashesPendentes = new FilaDeInteiros(tamanhoJanela / PACOTES_POR_BUFFER);
+        this.hash = ByteBuffer.allocate(HashDoBloco.TAMANHO_MAX);
+    }
+
+    boolean isVerificando() {
+        return arvore != null;
+    }
+
+    void copiar(long[] trechos, int quantidadeDeTrechos) {
+        int maximo = (getTamanhoDoAceite() - AceitarConexao.TAMANHO_MAX - Short.BYTES) / Copias.TAMANHO_DA_COPIA;
+
+        copias = Copias.criar(trechos, quantidadeDeTrechos, TAMANHO_DADOS, arquivo.getTamanho(), maximo);
+        if (copias.getQuantidade() == 0) {
+            copias = null;
+            return;
+        }
+
+        avancarCopias();
+    }
+
+    int getPacotesCopiados() {
+        return copias == null ? 0 : copias.getPacotesCopiados();
+    }
+
+    void setCanais(InetSocketAddress[] destinos, Selector seletor) throws IOException {
+        if (destinos.length < 2) {
+            return;
+        }
+
+        canais = new CanalDeEnvio[destinos.length];
+        for (int i = 0; i < canais.length; i++) {
+            canais[i] = new CanalDeEnvio(destinos[i], arquivo, blocos, ID_CONEXAO, TAMANHO_DADOS, seletor);
+            canais[i].start();
+        }
+    }
+
+    void acompanhar(boolean finalizar) throws IOException {
+        if (!acompanhando) {
+            return;
+        }
+
+        long tamanhoAnterior = arquivo.getTamanho();
+        boolean cresceu = arquivo.atualizarTamanho();
+
+        if (cresceu && tamanhoAnterior % TAMANHO_DADOS != 0) {
+            proximoPacote = Math.min(proximoPacote, (int) (tamanhoAnterior / TAMANHO_DADOS));
+        }
+
+        if (finalizar) {
+            acompanhando = false;
+            fluxoFinalizado = true;
+            fimPendente = true;
+            quantidadeDePacotes = arquivo.getQuantidadeDePacotes();
+        } else if (cresceu) {
+            quantidadeDePacotes = arquivo.getQuantidadeDePacotesCompletos();
+        } else {
+            quantidadeDePacotes = arquivo.getQuantidadeDePacotes();
+        }
+
+        janela.setQuantidadeDePacotes(quantidadeDePacotes);
+    }
+
+    int getQuantidadeDeCanais() {
+        return canais == null ? 1 : canais.length;
+    }
+
+    void fechar() {
+        temporizadores.cancelar(TEMPORIZADOR);
+
+        if (blocos != null) {
+            blocos.fechar();
+        }
+
+        if (canais != null) {
+            for (CanalDeEnvio canalDeEnvio : canais) {
+                canalDeEnvio.fechar();
+            }
+        }
+
+        if (arquivo != null) {
+            arquivo.fechar();
+        }
+    }
+
+    void retomar(SolicitarConexao solicitacao) {
+        int inicio = solicitacao.getPacoteInicial();
+
+        if (inicio <= 0 || inicio % PACOTES_POR_BUFFER != 0
+                || solicitacao.getTamanhoArquivo() != arquivo.getTamanho()
+                || solicitacao.getDataDeModificacao() != arquivo.getDataDeModificacao()
+                || solicitacao.getTamanhoDados() != TAMANHO_DADOS
+                || solicitacao.getPacotesPorBuffer() != PACOTES_POR_BUFFER) {
+            return;
+        }
+
+        retomada = solicitacao;
+        pacoteInicial = inicio;
+        ultimoPacoteOrdenado = Math.min(inicio, quantidadeDePacotes);
+        maiorSequenciaEnviada = ultimoPacoteOrdenado - 1;
+        ultimoBlocoComReparo = ultimoPacoteOrdenado - 1;
+        atualizarJanela();
+        proximoPacote = pularBlocosRecebidos(ultimoPacoteOrdenado);
+    }
+
+    void aceitar(int tentativas, InetSocketAddress destino) {
+        AceitarConexao aceitarConexao = new AceitarConexao(destino.getAddress(), destino.getPort());
+        DatagramPacket dp = aceitarConexao.set(ID_CONEXAO, quantidadeDePacotes, arquivo.getTamanho(),
+                TAMANHO_DADOS, PACOTES_POR_BUFFER, arquivo.getDataDeModificacao(), pacoteInicial, getQuantidadeDeCanais(),
+                acompanhando, isComprimindo(), isVerificando(), isMulticast() ? ENDERECO : null, copias, getTamanhoDoAceite());
+
+        aceite = ByteBuffer.wrap(dp.getData(), 0, dp.getLength());
+        aceitesPendentes.removeAll(Collections.singleton(destino));
+        for (int i = 0; i < tentativas; i++) {
+            aceitesPendentes.add(destino);
+        }
+    }
+
+    void adicionarMembro(InetSocketAddress endereco) {
+        if (membros == null) {
+            membros = new HashMap<InetSocketAddress, Membro>();
+        }
+
+        if (!membros.containsKey(endereco)) {
+            membros.put(endereco, new Membro());
+        }
+    }
+
+    boolean isMulticast() {
+        return membros != null;
+    }
+
+    boolean isMembro(InetSocketAddress endereco) {
+        return membros != null && membros.containsKey(endereco);
+    }
+
+    boolean isAberta() {
+        return janela.getInicio() == 0;
+    }
+
+    boolean removerMembro(InetSocketAddress endereco) {
+        if (membros != null && membros.remove(endereco) != null && confirmarGrupo()) {
+            reiniciarTemporizador();
+        }
+
+        return membros == null || membros.isEmpty();
+    }
+
+    boolean removerMembrosInativos(long agora, long limite) {
+        Iterator<Membro> iterador = membros.values().iterator();
+        boolean removido = false;
+
+        while (iterador.hasNext()) {
+            if (agora - iterador.next().ultimaAtividade > limite) {
+                iterador.remove();
+                removido = true;
+            }
+        }
+
+        if (removido && confirmarGrupo()) {
+            reiniciarTemporizador();
+        }
+
+        return membros.isEmpty();
+    }
+
+    private int getTamanhoDoAceite() {
+        int cabecalho = isReparoAtivo() ? Math.max(Reparo.TAMANHO_CABECALHO, Dados.TAMANHO_CABECALHO) : Dados.TAMANHO_CABECALHO;
+
+        return cabecalho + TAMANHO_DADOS;
+    }
+
+    boolean isPronta() {
+        return !aceitesPendentes.isEmpty() || (confirmada && !isCanalCheio() && (fimPendente || temHashPendente() || pacotePerdido >= 0 || janela.temPerdidos() || temReparoPendente() || temPacotesNovos()));
+    }
+
+    int enviarProximo(DatagramChannel canal) throws IOException {
+        if (!aceitesPendentes.isEmpty()) {
+            aceite.rewind();
+            int bytes = canal.send(aceite, aceitesPendentes.peek());
+            if (bytes > 0) {
+                aceitesPendentes.remove();
+            }
+
+            return bytes;
+        }
+
+        if (!confirmada) {
+            return -1;
+        }
+
+        if (fimPendente) {
+            return enviarFimDeFluxo(canal);
+        }
+
+        if (temHashPendente()) {
+            return enviarHash(canal);
+        }
+
+        int bytes = reenviarPacotePerdido(canal);
+        if (bytes >= 0) {
+            return bytes;
+        }
+
+        if (temReparoPendente()) {
+            return enviarReparo(canal);
+        }
+
+        if (!temPacotesNovos()) {
+            return -1;
+        }
+
+        proximoPacote = getProximoPacoteNovo();
+
+        if (!TEMPORIZADOR.isAgendado()) {
+            agendarReenvio(System.nanoTime() + rto);
+        }
+
+        bytes = enviar(canal, proximoPacote);
+        if (bytes > 0) {
+            agendarReparo(proximoPacote);
+            proximoPacote = pularBlocosRecebidos(getProximaSequencia(proximoPacote + 1));
+            avancarCopias();
+        }
+
+        return bytes;
+    }
+
+    void processarRelatorio(Relatorio relatorio, InetSocketAddress origem) {
+        Membro membro = null;
+        if (membros != null) {
+            membro = membros.get(origem);
+            if (membro == null) {
+                return;
+            }
+            membro.ultimaAtividade = System.currentTimeMillis();
+        }
+
+        ultimaAtividade = System.currentTimeMillis();
+        confirmada = true;
+
+        long agora = System.nanoTime();
+        if (estimadorDeRtt.amostrarEco(relatorio.getInstanteEcoado(), agora)) {
+            rto = estimadorDeRtt.getRto();
+        }
+        if (membro == null) {
+            estimadorDeRtt.registrarInstante(relatorio.getInstante(), agora);
+        }
+
+        if (fluxoFinalizado && agora - envioDoFim >= rto) {
+            fimPendente = true;
+        }
+
+        maiorSequenciaConfirmada = Math.max(maiorSequenciaConfirmada, relatorio.getMaiorSequenciaRecebida());
+
+        int entreguesAntes = pacotesEntregues;
+        boolean houveProgresso = false;
+
+        int numeroSequencia = relatorio.getUltimoPacoteOrdenado();
+        if (membro != null) {
+            membro.ultimoPacoteOrdenado = Math.max(membro.ultimoPacoteOrdenado, numeroSequencia);
+            houveProgresso = confirmarGrupo();
+        } else if (numeroSequencia > ultimoPacoteOrdenado) {
+            ultimoPacoteOrdenado = numeroSequencia;
+            atualizarJanela();
+            houveProgresso = true;
+        }
+
+        long supressao = Math.max(estimadorDeRtt.getSrtt(), SUPRESSAO_MINIMA);
+        int[] perdidos = relatorio.getPacotesPerdidos();
+        for (int i = 0; i < relatorio.getQuantidadeDePacotesPerdidos(); i++) {
+            int sequencia = getSequenciaEnviada(perdidos[i]);
+            if ((!envioUnico || perdidos[i] < proximoPacote) && !isReenvioRecente(sequencia, agora, supressao, membro != null)) {
+                janela.adicionarPerdido(sequencia);
+            }
+        }
+
+        avaliarRodada(relatorio);
+
+        if (houveProgresso || pacotesEntregues != entreguesAntes) {
+            reiniciarTemporizador();
+        }
+    }
+
+    void dispararTemporizador(long agora) {
+        int sonda = getSonda(Math.max(janela.getInicio(), maiorSequenciaConfirmada + 1), agora);
+        if (sonda < 0 && !acompanhando) {
+            sonda = getSonda(janela.getInicio(), agora);
+        }
+
+        if (sonda >= 0) {
+            janela.adicionarPerdido(sonda);
+        }
+
+        rto = Math.min(rto * 2, RTO_MAXIMO);
+        agendarReenvio(agora + rto);
+    }
+
+    private int getSonda(int inicio, long agora) {
+        int fim = Math.min(proximoPacote, janela.getFim());
+
+        for (int sequencia = inicio; sequencia < fim; sequencia++) {
+            if (getSequenciaEnviada(sequencia) != sequencia || (copias != null && copias.contem(sequencia))
+                    || janela.getTransmissoes(sequencia) == 0) {
+                continue;
+            }
+
+            if (agora - janela.getUltimoEnvio(sequencia) >= rto) {
+                return sequencia;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean isReenvioRecente(int sequencia, long agora, long supressao, boolean grupo) {
+        if (!grupo && janela.getTransmissoes(sequencia) <= 1) {
+            return false;
+        }
+
+        return agora - janela.getUltimoEnvio(sequencia) < supressao;
+    }
+
+    private boolean temPacotesNovos() {
+        if (envioUnico ? Math.max(proximoPacote, janela.getInicio()) >= janela.getFim() : janela.isVazia()) {
+            return false;
+        }
+
+        int proximo = getProximoPacoteNovo();
+        if (proximo >= janela.getFim()) {
+            return false;
+        }
+
+        return (blocos == null || blocos.isPronto(proximo))
+                && (arvore == null || arvore.isFolhaPronta(proximo / PACOTES_POR_BUFFER));
+    }
+
+    private int getProximoPacoteNovo() {
+        if (proximoPacote < janela.getInicio() || (!envioUnico && proximoPacote >= janela.getFim())) {
+            return pularCopias(pularBlocosRecebidos(janela.getInicio()));
+        }
+
+        return pularCopias(proximoPacote);
+    }
+
+    private boolean temReparoPendente() {
+        return proximoReparo < gruposDoReparo && blocoDoReparo >= janela.getInicio();
+    }
+
+    private void agendarReparo(int sequencia) {
+        int key = sequencia - (sequencia % PACOTES_POR_BUFFER);
+        int tamanho = Math.min(PACOTES_POR_BUFFER, quantidadeDePacotes - key);
+
+        if (!isReparoAtivo() || sequencia != key + tamanho - 1 || key <= ultimoBlocoComReparo) {
+            return;
+        }
+
+        ultimoBlocoComReparo = key;
+        blocoDoReparo = key;
+        gruposDoReparo = Reparo.getGrupos(tamanho, getRedundanciaEfetiva());
+        proximoReparo = 0;
+        reparoMontado = false;
+    }
+
+    private double getRedundanciaEfetiva() {
+        if (!redundanciaAdaptativa) {
+            return redundancia;
+        }
+
+        return Math.max(redundancia, FATOR_DE_REDUNDANCIA * taxaDePerda);
+    }
+
+    private int enviarFimDeFluxo(DatagramChannel canal) throws IOException {
+        if (fim == null) {
+            fim = ByteBuffer.allocate(FimDeFluxo.TAMANHO_MAX);
+        }
+
+        fim.clear();
+        FimDeFluxo.set(fim, ID_CONEXAO, arquivo.getTamanho());
+        fim.flip();
+
+        int bytes = canal.send(fim, ENDERECO);
+        if (bytes > 0) {
+            fimPendente = false;
+            envioDoFim = System.nanoTime();
+        }
+
+        return bytes;
+    }
+
+    private boolean temHashPendente() {
+        if (arvore == null) {
+            return false;
+        }
+
+        while (!hashesPendentes.isVazia() && hashesPendentes.get(0) < janela.getInicio()) {
+            hashesPendentes.remover();
+        }
+
+        if (hashesPendentes.isVazia()) {
+            return false;
+        }
+
+        int key = hashesPendentes.get(0);
+        boolean precisaDaRaiz = retomada != null || key + PACOTES_POR_BUFFER >= quantidadeDePacotes;
+
+        return arvore.isFolhaPronta(key / PACOTES_POR_BUFFER) && (!precisaDaRaiz || arvore.getRaiz() != null);
+    }
+
+    private void agendarHash(int sequencia) {
+        if (arvore == null) {
+            return;
+        }
+
+        int key = sequencia - (sequencia % PACOTES_POR_BUFFER);
+        int ultimo = getSequenciaEnviada(Math.min(key + PACOTES_POR_BUFFER, quantidadeDePacotes) - 1);
+
+        if (sequencia == ultimo) {
+            hashesPendentes.adicionar(key);
+        }
+    }
+
+    private int enviarHash(DatagramChannel canal) throws IOException {
+        int key = hashesPendentes.get(0);
+        byte[] raiz = arvore.getRaiz();
+
+        hash.clear();
+        HashDoBloco.setCabecalho(hash, ID_CONEXAO, key);
+        arvore.getFolha(key / PACOTES_POR_BUFFER, hash);
+        if (raiz != null) {
+            hash.put(raiz);
+        }
+        hash.flip();
+
+        int bytes = canal.send(hash, ENDERECO);
+        if (bytes > 0) {
+            hashesPendentes.remover();
+        }
+
+        return bytes;
+    }
+
+    private int enviarReparo(DatagramChannel canal) throws IOException {
+        if (!reparoMontado) {
+            montarReparo();
+        }
+
+        reparo.rewind();
+        int bytes = canal.send(reparo, ENDERECO);
+        if (bytes > 0) {
+            pacotesDeReparo++;
+            proximoReparo++;
+            reparoMontado = false;
+        }
+
+        return bytes;
+    }
+
+    private void montarReparo() throws IOException {
+        if (reparo == null) {
+            reparo = ByteBuffer.allocateDirect(Reparo.TAMANHO_CABECALHO + TAMANHO_DADOS);
+        }
+
+        int fim = Math.min(blocoDoReparo + PACOTES_POR_BUFFER, quantidadeDePacotes);
+        int sequencia = blocoDoReparo + proximoReparo;
+
+        reparo.clear();
+        Reparo.setCabecalho(reparo, ID_CONEXAO, blocoDoReparo, proximoReparo, gruposDoReparo);
+        arquivo.get(sequencia, reparo);
+        while (reparo.hasRemaining()) {
+            reparo.put((byte) 0);
+        }
+
+        for (sequencia += gruposDoReparo; sequencia < fim; sequencia += gruposDoReparo) {
+            arquivo.combinar(sequencia, reparo, Reparo.TAMANHO_CABECALHO);
+        }
+
+        reparoMontado = true;
+    }
+
+    private void avaliarRodada(Relatorio relatorio) {
+        int recebidos = relatorio.getPacotesRecebidos();
+        if (recebidos - pacotesEntregues > 0) {
+            pacotesEntregues = recebidos;
+        }
+
+        if (marcador < 0 || relatorio.getMaiorSequenciaRecebida() < marcador) {
+            return;
+        }
+
+        long duracao = System.nanoTime() - envioDoMarcador;
+
+        long perdas = Math.max(0, enviadosNoMarcador - pacotesEntregues - perdasContabilizadas);
+        perdasContabilizadas += perdas;
+        atualizarTaxaDePerda(perdas, enviadosNoMarcador - enviadosNaRodadaAnterior);
+        enviadosNaRodadaAnterior = enviadosNoMarcador;
+
+        if (controle == null) {
+            marcador = -1;
+            return;
+        }
+
+        long bytesEntregues = (long) (pacotesEntregues - entreguesNoMarcador) * TAMANHO_DADOS;
+
+        if (perdas > 0) {
+            controle.aoPerder(perdas * TAMANHO_DADOS);
+        }
+
+        long taxaDeEntrega = duracao > 0 ? (long) (bytesEntregues * (double) TimeUnit.SECONDS.toNanos(1) / duracao) : 0;
+        controle.aoConfirmar(bytesEntregues, marcadorReenviado ? 0 : duracao, taxaDeEntrega);
+        cadenciador.setTaxaEmBytes(controle.getTaxa());
+
+        marcador = -1;
+    }
+
+    private void atualizarTaxaDePerda(long perdas, long enviados) {
+        if (enviados <= 0) {
+            return;
+        }
+
+        taxaDePerda += (Math.min(1, perdas / (double) enviados) - taxaDePerda) / 8;
+    }
+
+    private int reenviarPacotePerdido(DatagramChannel canal) throws IOException {
+        if (pacotePerdido < 0 || !janela.contem(pacotePerdido)) {
+            pacotePerdido = janela.removerPerdido();
+            reenviosDoPacote = 0;
+
+            while (pacotePerdido >= 0 && blocos != null && !blocos.isPronto(pacotePerdido)) {
+                pacotePerdido = janela.removerPerdido();
+            }
+
+            if (pacotePerdido < 0) {
+                return -1;
+            }
+        }
+
+        int bytes = enviar(canal, pacotePerdido);
+        if (bytes <= 0) {
+            return bytes;
+        }
+
+        reenviosDoPacote++;
+        if (reenviosDoPacote >= numeroDeReenvios) {
+            pacotePerdido = -1;
+        }
+
+        return bytes;
+    }
+
+    private int enviar(DatagramChannel canal, int sequencia) throws IOException {
+        long agora = System.nanoTime();
+
+        if (blocos != null && !blocos.isPronto(sequencia)) {
+            return -1;
+        }
+
+        if (canais != null) {
+            return enfileirar(canais[(sequencia / PACOTES_POR_BUFFER) % canais.length], sequencia, agora);
+        }
+
+        envio.clear();
+        if (blocos == null) {
+            Dados.setCabecalho(envio, ID_CONEXAO, sequencia, EstimadorDeRtt.getInstante(agora), estimadorDeRtt.removerEco(agora));
+            arquivo.get(sequencia, envio);
+        } else {
+            Dados.setCabecalho(envio, blocos.getFlag(sequencia), ID_CONEXAO, sequencia, EstimadorDeRtt.getInstante(agora),
+                    estimadorDeRtt.removerEco(agora));
+            blocos.get(sequencia, envio);
+        }
+        envio.flip();
+
+        int bytes = canal.send(envio, ENDERECO);
+        if (bytes > 0) {
+            registrarEnvio(sequencia);
+            agendarHash(sequencia);
+        }
+
+        return bytes;
+    }
+
+    private int enfileirar(CanalDeEnvio canalDeEnvio, int sequencia, long agora) {
+        if (!canalDeEnvio.enfileirar(sequencia, estimadorDeRtt.removerEco(agora))) {
+            canalCheio = canalDeEnvio;
+            return -1;
+        }
+
+        registrarEnvio(sequencia);
+        agendarHash(sequencia);
+
+        return Dados.TAMANHO_CABECALHO + (blocos == null ? arquivo.getTamanhoDados(sequencia) : blocos.getTamanhoDados(sequencia));
+    }
+
+    private boolean isCanalCheio() {
+        if (canalCheio != null && !canalCheio.isCheio()) {
+            canalCheio = null;
+        }
+
+        return canalCheio != null;
+    }
+
+    private void registrarEnvio(int sequencia) {
+        pacotesEnviados++;
+        janela.registrarEnvio(sequencia, System.nanoTime());
+
+        if (janela.getTransmissoes(sequencia) > 1) {
+            pacotesReenviados++;
+        }
+
+        if (sequencia <= maiorSequenciaEnviada) {
+            if (sequencia == marcador) {
+                marcadorReenviado = true;
+            }
+            return;
+        }
+
+        maiorSequenciaEnviada = sequencia;
+
+        if (marcador < 0) {
+            marcador = sequencia;
+            envioDoMarcador = System.nanoTime();
+            enviadosNoMarcador = pacotesEnviados;
+            entreguesNoMarcador = pacotesEntregues;
+            marcadorReenviado = false;
+        }
+    }
+
+    private int pularBlocosRecebidos(int sequencia) {
+        if (retomada == null) {
+            return sequencia;
+        }
+
+        int key = sequencia - (sequencia % PACOTES_POR_BUFFER);
+        while (key >= pacoteInicial && key < quantidadeDePacotes
+                && retomada.isBlocoRecebido((key - pacoteInicial) / PACOTES_POR_BUFFER)) {
+            key += PACOTES_POR_BUFFER;
+            sequencia = key;
+        }
+
+        return sequencia;
+    }
+
+    private int pularCopias(int sequencia) {
+        while (copias != null && sequencia < janela.getFim() && copias.contem(sequencia)) {
+            sequencia = Math.min(copias.getFim(sequencia), janela.getFim());
+        }
+
+        return sequencia;
+    }
+
+    private void avancarCopias() {
+        if (copias == null || !envioUnico) {
+            return;
+        }
+
+        int atual = Math.max(proximoPacote, janela.getInicio());
+        int seguinte = pularCopias(atual);
+
+        if (arvore != null) {
+            for (int key = atual - (atual % PACOTES_POR_BUFFER); key < seguinte; key += PACOTES_POR_BUFFER) {
+                int ultimo = Math.min(key + PACOTES_POR_BUFFER, quantidadeDePacotes) - 1;
+
+                if (ultimo >= atual && ultimo < seguinte) {
+                    agendarHash(ultimo);
+                }
+            }
+        }
+
+        proximoPacote = seguinte;
+    }
+
+    private int getSequenciaEnviada(int sequencia) {
+        return blocos == null ? sequencia : blocos.getSequenciaEnviada(sequencia);
+    }
+
+    private int getProximaSequencia(int sequencia) {
+        return blocos == null ? sequencia : blocos.getProximaSequencia(sequencia);
+    }
+
+    private void atualizarJanela() {
+        if (ultimoPacoteOrdenado > janela.getInicio()) {
+            janela.avancar(ultimoPacoteOrdenado);
+            arquivo.liberarAte(janela.getInicio());
+
+            if (blocos != null) {
+                blocos.preparar(janela.getInicio(), janela.getFim());
+            }
+
+            avancarCopias();
+        }
+    }
+
+    private boolean confirmarGrupo() {
+        int confirmado = Integer.MAX_VALUE;
+
+        for (Membro membro : membros.values()) {
+            confirmado = Math.min(confirmado, membro.ultimoPacoteOrdenado);
+        }
+
+        if (confirmado == Integer.MAX_VALUE || confirmado <= ultimoPacoteOrdenado) {
+            return false;
+        }
+
+        ultimoPacoteOrdenado = confirmado;
+        atualizarJanela();
+
+        return true;
+    }
+
+    private void reiniciarTemporizador() {
+        if (estimadorDeRtt.isAmostrado()) {
+            rto = estimadorDeRtt.getRto();
+        }
+
+        if (proximoPacote > janela.getInicio()) {
+            agendarReenvio(System.nanoTime() + rto);
+        } else {
+            temporizadores.cancelar(TEMPORIZADOR);
+        }
+    }
+
+    private void agendarReenvio(long prazo) {
+        if (envioUnico) {
+            temporizadores.agendar(TEMPORIZADOR, prazo);
+        }
+    }
+
+    private static class Membro {
+
+        private int ultimoPacoteOrdenado;
+        private long ultimaAtividade;
+
+        private Membro() {
+            this.ultimoPacoteOrdenado = -1;
+            this.ultimaAtividade = System.currentTimeMillis();
+        }
+
+    }
+
+}
@@ -22,9 +22,24 @@ import java.nio.ByteBuffer;
 
 class SolicitarConexao extends Pacote {
 
-    static final int TAMANHO_MAX = Byte.BYTES+Integer.BYTES+Pacote.TAMANHO_MAX_DADOS;
+    static final int TAMANHO_CABECALHO = (6*Byte.BYTES)+(5*Integer.BYTES)+(2*Long.BYTES)+Short.BYTES;
+    static final int TAMANHO_MAX = TAMANHO_CABECALHO+Pacote.TAMANHO_MAX_DADOS;
+    static final int MAXIMO_DE_BLOCOS_NO_MAPA = 1024;
+    static final int MAXIMO_DE_CANAIS = 64;
     
     private int quantidadeDeBuffers; 
+    private int tamanhoDados;
+    private long tamanhoArquivo;
+    private long dataDeModificacao;
+    private int pacotesPorBuffer;
+    private int pacoteInicial;
+    private byte[] blocosRecebidos;
+    private int[] portasDosCanais;
+    private boolean acompanhar;
+    private boolean comprimir;
+    private boolean verificar;
+    private int tokenDelta;
+    private boolean multicast;
     private String arquivo;
     
     SolicitarConexao(InetAddress HOSTNAME, int PORTA) {
@@ -39,6 +54,59 @@ class SolicitarConexao extends Pacote {
         this.quantidadeDeBuffers = quatidadePacotes;
     }
     
+    int getTamanhoDados() {
+        return tamanhoDados;
+    }
+
+    void setTamanhoDados(int tamanhoDados) {
+        this.tamanhoDados = tamanhoDados;
+    }
+
+    long getTamanhoArquivo() {
+        return tamanhoArquivo;
+    }
+
+    long getDataDeModificacao() {
+        return dataDeModificacao;
+    }
+
+    int getPacotesPorBuffer() {
+        return pacotesPorBuffer;
+    }
+
+    int getPacoteInicial() {
+        return pacoteInicial;
+    }
+
+    boolean isBlocoRecebido(int indice) {
+        return indice >= 0 && indice < blocosRecebidos.length * 8
+                && (blocosRecebidos[indice >>> 3] & (1 << (indice & 7))) != 0;
+    }
+
+    int[] getPortasDosCanais() {
+        return portasDosCanais;
+    }
+
+    boolean isAcompanhar() {
+        return acompanhar;
+    }
+
+    boolean isComprimir() {
+        return comprimir;
+    }
+
+    boolean isVerificar() {
+        return verificar;
+    }
+
+    int getTokenDelta() {
+        return tokenDelta;
+    }
+
+    boolean isMulticast() {
+        return multicast;
+    }
+
     String getArquivo() {
         return arquivo;
     }
@@ -47,13 +115,40 @@ class SolicitarConexao extends Pacote {
         this.arquivo = arquivo;
     }
 
-    DatagramPacket set(String arquivo, int quantidadeDeBuffers) {
+    DatagramPacket set(String arquivo, int quantidadeDeBuffers, int tamanhoDados, PontoDeRetomada retomada, int[] portasDosCanais,
+            boolean acompanhar, boolean comprimir, boolean verificar, int tokenDelta, boolean multicast) {
         int bytesArquivo = arquivo.getBytes().length;
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Byte.BYTES+Integer.BYTES+bytesArquivo);
+        int blocosNoMapa = retomada == null ? 0 : Math.min(MAXIMO_DE_BLOCOS_NO_MAPA, retomada.getBlocosAFrente());
+        int bytesMapa = (blocosNoMapa + 7) / 8;
+        ByteBuffer byteBuffer = ByteBuffer.allocate(TAMANHO_CABECALHO+bytesMapa+(portasDosCanais.length*Short.BYTES)+bytesArquivo);
         byteBuffer.clear();
         
         byteBuffer.put(Flag.SOLICITA_CONEXAO.getByte());
         byteBuffer.putInt(quantidadeDeBuffers);
+        byteBuffer.putInt(tamanhoDados);
+        byteBuffer.putLong(retomada == null ? 0 : retomada.getTamanhoArquivo());
+        byteBuffer.putLong(retomada == null ? 0 : retomada.getDataDeModificacao());
+        byteBuffer.putInt(retomada == null ? 0 : retomada.getPacotesPorBuffer());
+        byteBuffer.putInt(retomada == null ? 0 : retomada.getPacoteInicial());
+        byteBuffer.putShort((short) bytesMapa);
+        for (int i = 0; i < bytesMapa; i++) {
+            int octeto = 0;
+            for (int j = 0; j < 8 && (i * 8) + j < blocosNoMapa; j++) {
+                if (retomada.isBlocoAFrenteGravado((i * 8) + j)) {
+                    octeto |= 1 << j;
+                }
+            }
+            byteBuffer.put((byte) octeto);
+        }
+        byteBuffer.put((byte) portasDosCanais.length);
+        for (int porta : portasDosCanais) {
+            byteBuffer.putShort((short) porta);
+        }
+        byteBuffer.put((byte) (acompanhar ? 1 : 0));
+        byteBuffer.put((byte) (comprimir ? 1 : 0));
+        byteBuffer.put((byte) (verificar ? 1 : 0));
+        byteBuffer.putInt(tokenDelta);
+        byteBuffer.put((byte) (multicast ? 1 : 0));
         byteBuffer.put(arquivo.getBytes());
         
         byte[] bytes = byteBuffer.array();
@@ -71,8 +166,24 @@ class SolicitarConexao extends Pacote {
         
         flag = byteBuffer.get();
         quantidadeDeBuffers = byteBuffer.getInt();
+        this.tamanhoDados = byteBuffer.getInt();
+        tamanhoArquivo = byteBuffer.getLong();
+        dataDeModificacao = byteBuffer.getLong();
+        pacotesPorBuffer = byteBuffer.getInt();
+        pacoteInicial = byteBuffer.getInt();
+        blocosRecebidos = new byte[Math.min(byteBuffer.getShort() & 0xFFFF, tamanhoDados - TAMANHO_CABECALHO)];
+        byteBuffer.get(blocosRecebidos);
+        portasDosCanais = new int[Math.min(byteBuffer.get() & 0xFF, (tamanhoDados - byteBuffer.position()) / Short.BYTES)];
+        for (int i = 0; i < portasDosCanais.length; i++) {
+            portasDosCanais[i] = byteBuffer.getShort() & 0xFFFF;
+        }
+        acompanhar = byteBuffer.position() < tamanhoDados && byteBuffer.get() != 0;
+        comprimir = byteBuffer.position() < tamanhoDados && byteBuffer.get() != 0;
+        verificar = byteBuffer.position() < tamanhoDados && byteBuffer.get() != 0;
+        tokenDelta = byteBuffer.position() + Integer.BYTES <= tamanhoDados ? byteBuffer.getInt() : 0;
+        multicast = byteBuffer.position() < tamanhoDados && byteBuffer.get() != 0;
         
-        int bytesRestantes = tamanhoDados - (Byte.BYTES+Integer.BYTES);
+        int bytesRestantes = tamanhoDados - byteBuffer.position();
         byte[] bytes = new byte[bytesRestantes];
         byteBuffer.get(bytes);
         
@@ -0,0 +1,374 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lstreamer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+class TabelaDeAssinaturas {
+
+    static final int TAMANHO_DA_SOMA_FORTE = 16;
+    static final int TAMANHO_DA_ASSINATURA = Integer.BYTES + TAMANHO_DA_SOMA_FORTE;
+    static final int TAMANHO_MINIMO_DO_BLOCO = 2048;
+    static final int TAMANHO_MAXIMO_DO_BLOCO = 1 << 24;
+    static final int MAXIMO_DE_ASSINATURAS = 1 << 20;
+
+    private static final int TAMANHO_PREFERIDO_DO_BLOCO = 1 << 17;
+    private static final int TAMANHO_DA_LEITURA = 1 << 22;
+
+    private static final ThreadLocal<MessageDigest> RESUMOS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+
+    private final int TOKEN;
+    private final int TAMANHO_DO_BLOCO;
+    private final int QUANTIDADE;
+    private final long CRIACAO;
+
+    private int[] fracas;
+    private byte[] fortes;
+    private long[] recebidas;
+    private int faltando;
+    private boolean comparando;
+    private volatile long[] trechos;
+    private volatile int quantidadeDeTrechos;
+    private InetSocketAddress endereco;
+    private byte[] solicitacao;
+
+    TabelaDeAssinaturas(int token, int tamanhoDoBloco, int quantidade) {
+        this.TOKEN = token;
+        this.TAMANHO_DO_BLOCO = tamanhoDoBloco;
+        this.QUANTIDADE = quantidade;
+        this.CRIACAO = System.currentTimeMillis();
+        this.fracas = new int[quantidade];
+        this.fortes = new byte[quantidade * TAMANHO_DA_SOMA_FORTE];
+        this.recebidas = new long[(quantidade + 63) / 64];
+        this.faltando = quantidade;
+        this.comparando = false;
+        this.quantidadeDeTrechos = 0;
+    }
+
+    static TabelaDeAssinaturas calcular(FileChannel canal, long tamanhoArquivo) throws IOException {
+        int tamanhoDoBloco = getTamanhoDoBloco(tamanhoArquivo);
+        int token = 0;
+        while (token == 0) {
+            token = new SecureRandom().nextInt();
+        }
+
+        TabelaDeAssinaturas tabela = new TabelaDeAssinaturas(token, tamanhoDoBloco, (int) (tamanhoArquivo / tamanhoDoBloco));
+        ByteBuffer leitura = ByteBuffer.allocate(tamanhoDoBloco);
+
+        for (int i = 0; i < tabela.QUANTIDADE; i++) {
+            long posicao = (long) i * tamanhoDoBloco;
+
+            leitura.clear();
+            while (leitura.hasRemaining()) {
+                if (canal.read(leitura, posicao + leitura.position()) < 0) {
+                    throw new IOException("Fim inesperado do arquivo.");
+                }
+            }
+
+            tabela.fracas[i] = calcularSomaFraca(leitura.array(), 0, tamanhoDoBloco);
+            calcularSomaForte(leitura.array(), 0, tamanhoDoBloco, tabela.fortes, i * TAMANHO_DA_SOMA_FORTE);
+        }
+
+        tabela.faltando = 0;
+
+        return tabela;
+    }
+
+    static int getTamanhoDoBloco(long tamanhoArquivo) {
+        long tamanho = Math.max(TAMANHO_MINIMO_DO_BLOCO, Math.min(TAMANHO_PREFERIDO_DO_BLOCO, (long) Math.sqrt(tamanhoArquivo)));
+        tamanho = Math.max(tamanho, (tamanhoArquivo + MAXIMO_DE_ASSINATURAS - 1) / MAXIMO_DE_ASSINATURAS);
+
+        return (int) Math.min(TAMANHO_MAXIMO_DO_BLOCO, (tamanho + 63) & ~63L);
+    }
+
+    static int calcularSomaFraca(byte[] dados, int inicio, int tamanho) {
+        int a = 0;
+        int b = 0;
+
+        for (int i = 0; i < tamanho; i++) {
+            a += dados[inicio + i] & 0xFF;
+            b += (tamanho - i) * (dados[inicio + i] & 0xFF);
+        }
+
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    static int rolarSomaFraca(int soma, int tamanho, byte saindo, byte entrando) {
+        int a = soma & 0xFFFF;
+        int b = soma >>> 16;
+
+        a = (a - (saindo & 0xFF) + (entrando & 0xFF)) & 0xFFFF;
+        b = (b - (tamanho * (saindo & 0xFF)) + a) & 0xFFFF;
+
+        return a | (b << 16);
+    }
+
+    static void calcularSomaForte(byte[] dados, int inicio, int tamanho, byte[] destino, int posicao) {
+        MessageDigest resumo = RESUMOS.get();
+
+        resumo.reset();
+        resumo.update(dados, inicio, tamanho);
+        System.arraycopy(resumo.digest(), 0, destino, posicao, TAMANHO_DA_SOMA_FORTE);
+    }
+
+    int getToken() {
+        return TOKEN;
+    }
+
+    int getTamanhoDoBloco() {
+        return TAMANHO_DO_BLOCO;
+    }
+
+    int getQuantidade() {
+        return QUANTIDADE;
+    }
+
+    long getCriacao() {
+        return CRIACAO;
+    }
+
+    int getFaltando() {
+        return faltando;
+    }
+
+    boolean isCompleta() {
+        return faltando == 0;
+    }
+
+    void putAssinaturas(ByteBuffer destino, int indice, int quantidade) {
+        for (int i = indice; i < indice + quantidade; i++) {
+            destino.putInt(fracas[i]);
+            destino.put(fortes, i * TAMANHO_DA_SOMA_FORTE, TAMANHO_DA_SOMA_FORTE);
+        }
+    }
+
+    void adicionar(ByteBuffer pacote) {
+        int indice = Assinaturas.getIndice(pacote);
+        int quantidade = Math.min(QUANTIDADE - indice, (pacote.limit() - Assinaturas.TAMANHO_CABECALHO) / TAMANHO_DA_ASSINATURA);
+
+        pacote.position(Assinaturas.TAMANHO_CABECALHO);
+        for (int i = indice; i < indice + quantidade; i++) {
+            fracas[i] = pacote.getInt();
+            pacote.get(fortes, i * TAMANHO_DA_SOMA_FORTE, TAMANHO_DA_SOMA_FORTE);
+
+            if ((recebidas[i >>> 6] & (1L << i)) == 0) {
+                recebidas[i >>> 6] |= 1L << i;
+                faltando--;
+            }
+        }
+    }
+
+    void setSolicitacao(InetSocketAddress endereco, byte[] dados, int tamanho) {
+        this.endereco = endereco;
+        this.solicitacao = Arrays.copyOf(dados, tamanho);
+    }
+
+    InetSocketAddress getEndereco() {
+        return endereco;
+    }
+
+    byte[] getSolicitacao() {
+        return solicitacao;
+    }
+
+    synchronized boolean iniciarComparacao() {
+        if (comparando) {
+            return false;
+        }
+
+        comparando = true;
+
+        return true;
+    }
+
+    boolean isComparada() {
+        return trechos != null;
+    }
+
+    long[] getTrechos() {
+        return trechos;
+    }
+
+    int getQuantidadeDeTrechos() {
+        return quantidadeDeTrechos;
+    }
+
+    void comparar(String caminho) {
+        long[] encontrados = new long[3 * 16];
+        int quantidade = 0;
+
+        try {
+            FileInputStream arquivo = new FileInputStream(caminho);
+
+            try {
+                FileChannel canal = arquivo.getChannel();
+                long tamanhoArquivo = canal.size();
+                int[] primeiras = criarIndice();
+                int mascara = primeiras.length - 1;
+                int[] proximas = new int[QUANTIDADE];
+                for (int i = QUANTIDADE - 1; i >= 0; i--) {
+                    int entrada = espalhar(fracas[i]) & mascara;
+                    proximas[i] = primeiras[entrada];
+                    primeiras[entrada] = i;
+                }
+
+                byte[] dados = new byte[Math.max(TAMANHO_DA_LEITURA, 2 * TAMANHO_DO_BLOCO)];
+                byte[] forte = new byte[TAMANHO_DA_SOMA_FORTE];
+                long base = 0;
+                int lidos = 0;
+                long posicao = 0;
+                int soma = 0;
+                boolean somaValida = false;
+                int esperado = -1;
+
+                while (posicao + TAMANHO_DO_BLOCO <= tamanhoArquivo) {
+                    int inicio = (int) (posicao - base);
+
+                    if (inicio + TAMANHO_DO_BLOCO + 1 > lidos && base + lidos < tamanhoArquivo) {
+                        System.arraycopy(dados, inicio, dados, 0, lidos - inicio);
+                        base = posicao;
+                        lidos -= inicio;
+                        inicio = 0;
+                        lidos += ler(canal, dados, lidos, base + lidos);
+                    }
+
+                    if (!somaValida) {
+                        soma = calcularSomaFraca(dados, inicio, TAMANHO_DO_BLOCO);
+                        somaValida = true;
+                    }
+
+                    int bloco = -1;
+                    boolean forteCalculada = false;
+
+                    if (esperado >= 0 && esperado < QUANTIDADE && fracas[esperado] == soma) {
+                        calcularSomaForte(dados, inicio, TAMANHO_DO_BLOCO, forte, 0);
+                        forteCalculada = true;
+                        if (isForteIgual(esperado, forte)) {
+                            bloco = esperado;
+                        }
+                    }
+
+                    for (int i = primeiras[espalhar(soma) & mascara]; bloco < 0 && i >= 0; i = proximas[i]) {
+                        if (fracas[i] != soma) {
+                            continue;
+                        }
+
+                        if (!forteCalculada) {
+                            calcularSomaForte(dados, inicio, TAMANHO_DO_BLOCO, forte, 0);
+                            forteCalculada = true;
+                        }
+
+                        if (isForteIgual(i, forte)) {
+                            bloco = i;
+                        }
+                    }
+
+                    if (bloco >= 0) {
+                        long antigo = (long) bloco * TAMANHO_DO_BLOCO;
+                        if (quantidade > 0 && encontrados[(3 * quantidade) - 3] + encontrados[(3 * quantidade) - 1] == posicao
+                                && encontrados[(3 * quantidade) - 2] + encontrados[(3 * quantidade) - 1] == antigo) {
+                            encontrados[(3 * quantidade) - 1] += TAMANHO_DO_BLOCO;
+                        } else {
+                            if (3 * (quantidade + 1) > encontrados.length) {
+                                encontrados = Arrays.copyOf(encontrados, encontrados.length * 2);
+                            }
+                            encontrados[3 * quantidade] = posicao;
+                            encontrados[(3 * quantidade) + 1] = antigo;
+                            encontrados[(3 * quantidade) + 2] = TAMANHO_DO_BLOCO;
+                            quantidade++;
+                        }
+
+                        esperado = bloco + 1;
+                        posicao += TAMANHO_DO_BLOCO;
+                        somaValida = false;
+                    } else if (posicao + TAMANHO_DO_BLOCO < tamanhoArquivo) {
+                        soma = rolarSomaFraca(soma, TAMANHO_DO_BLOCO, dados[inicio], dados[inicio + TAMANHO_DO_BLOCO]);
+                        esperado = -1;
+                        posicao++;
+                    } else {
+                        break;
+                    }
+                }
+            } finally {
+                arquivo.close();
+            }
+        } catch (IOException ex) {
+            quantidade = 0;
+        }
+
+        fracas = null;
+        fortes = null;
+        quantidadeDeTrechos = quantidade;
+        trechos = encontrados;
+    }
+
+    private int[] criarIndice() {
+        int tamanho = 1;
+        while (tamanho < 2 * QUANTIDADE) {
+            tamanho <<= 1;
+        }
+
+        int[] primeiras = new int[tamanho];
+        Arrays.fill(primeiras, -1);
+
+        return primeiras;
+    }
+
+    private boolean isForteIgual(int bloco, byte[] forte) {
+        for (int i = 0; i < TAMANHO_DA_SOMA_FORTE; i++) {
+            if (fortes[(bloco * TAMANHO_DA_SOMA_FORTE) + i] != forte[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int espalhar(int soma) {
+        return (soma ^ (soma >>> 16)) * 0x45D9F3B;
+    }
+
+    private static int ler(FileChannel canal, byte[] dados, int inicio, long posicao) throws IOException {
+        ByteBuffer destino = ByteBuffer.wrap(dados, inicio, dados.length - inicio);
+
+        while (destino.hasRemaining()) {
+            if (canal.read(destino, posicao + (destino.position() - inicio)) < 0) {
+                break;
+            }
+        }
+
+        return destino.position() - inicio;
+    }
+
+}
@@ -0,0 +1,45 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+class Temporizador<T> {
+
+    static final int DESATIVADO = -1;
+    static final int VENCIDO = -2;
+
+    private final T DONO;
+
+    Temporizador<T> anterior;
+    Temporizador<T> proximo;
+    long prazo;
+    int posicao;
+
+    Temporizador(T dono) {
+        this.DONO = dono;
+        this.posicao = DESATIVADO;
+    }
+
+    T getDono() {
+        return DONO;
+    }
+
+    boolean isAgendado() {
+        return posicao != DESATIVADO;
+    }
+
+}
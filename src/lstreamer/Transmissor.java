@@ -16,45 +16,81 @@ limitations under the License.
 
 package lstreamer;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class Transmissor {
 
     private final int TAMANHO_BUFFER = 500;
+    private final int TAMANHO_MAXIMO_DO_BUFFER = 1 << 20;
+    private final long TEMPO_MAXIMO_DE_INATIVIDADE = 30000;
+    private final long ESPERA_MAXIMA = TimeUnit.SECONDS.toNanos(1);
+    private final int PACOTES_POR_RODADA = 64;
+    private final int MAXIMO_DE_TABELAS_DE_ASSINATURAS = 64;
+    private final long TAMANHO_PADRAO_DO_CACHE = 256L << 20;
+    private final long INTERVALO_DE_ACOMPANHAMENTO = TimeUnit.MILLISECONDS.toNanos(1);
+    private final Supplier<ControleDeCongestionamento> CONTROLE_PADRAO = new Supplier<ControleDeCongestionamento>() {
+        @Override
+        public ControleDeCongestionamento get() {
+            return new ControleAIMD();
+        }
+    };
 
-    private InetAddress hostnameReceptor;
-    private int portaReceptor;
-    private DatagramSocket socket;
-    private int idConexao;
-    private int sequencia;
-    private List<Integer> pacotesPerdidos;
-    private List<Dados> pacotes;
-    private int quantidadePacotesNaLista;
-    private int tamanhoLista;
-    private int ultimoPacoteOrdenado;
-    private int pacing;
+    private int porta;
+    private DatagramChannel canal;
+    private Selector seletor;
+    private ByteBuffer recepcao;
+    private Relatorio relatorio;
+    private Map<Integer, Sessao> sessoes;
+    private Set<String> arquivosFinalizados;
+    private Map<String, ArvoreDeHashes> arvores;
+    private Map<Integer, TabelaDeAssinaturas> assinaturas;
+    private Queue<TabelaDeAssinaturas> comparacoesConcluidas;
+    private long proximoAcompanhamento;
+    private RodaDeTemporizadores<Sessao> temporizadores;
+    private AtomicInteger proximoIdConexao;
+    private Cadenciador cadenciador;
+    private Supplier<? extends ControleDeCongestionamento> controleDeCongestionamento;
     private int numeroDeReenvios;
+    private int tamanhoMaximoDosPacotes;
+    private int quantidadeMaximaDeCanais;
+    private boolean envioUnico;
+    private double redundancia;
+    private boolean redundanciaAdaptativa;
+    private boolean compressao;
+    private CacheDeBlocos cacheDeBlocos;
+    private InetSocketAddress grupo;
+    private ExecutorService trabalhadores;
+    private volatile long pacotesEnviados;
+    private volatile long pacotesReenviados;
+    private volatile long pacotesDeReparo;
     private int tentativasDaConexao;
     private String repositorio;
-    private String arquivo;
-    private DataInputStream entrada;
-    private boolean fimArquivo;
     private volatile boolean enviando;
-    private volatile boolean houvePerdas;
+    private volatile boolean servindo;
+    private boolean houveConexao;
 
     /**
      * Essa classe representa o envio de dados para o receptor.
@@ -104,19 +140,30 @@ public class Transmissor {
      *
      */
     public Transmissor(String repositorio, int porta) throws UnknownHostException {
-        idConexao = Long.hashCode(System.currentTimeMillis());
-        portaReceptor = porta;
-        sequencia = 0;
-        pacing = 7;
-        numeroDeReenvios = 1;
-        pacotes = new ArrayList<Dados>();
-        quantidadePacotesNaLista = 0;
-        fimArquivo = false;
-        enviando = false;
-        pacotesPerdidos = new ArrayList<Integer>();
-        houvePerdas = false;
-        ultimoPacoteOrdenado = -1;
-        tentativasDaConexao = 5;
+        this.porta = porta;
+        this.cadenciador = new Cadenciador();
+        this.cadenciador.setIntervalo(TimeUnit.MILLISECONDS.toNanos(7));
+        this.numeroDeReenvios = 1;
+        this.controleDeCongestionamento = CONTROLE_PADRAO;
+        this.tamanhoMaximoDosPacotes = Dados.TAMANHO_MAX_NEGOCIAVEL;
+        this.quantidadeMaximaDeCanais = Runtime.getRuntime().availableProcessors();
+        this.envioUnico = true;
+        this.redundancia = 0;
+        this.redundanciaAdaptativa = false;
+        this.compressao = true;
+        this.cacheDeBlocos = new CacheDeBlocos(TAMANHO_PADRAO_DO_CACHE);
+        this.grupo = null;
+        this.pacotesEnviados = 0;
+        this.pacotesReenviados = 0;
+        this.pacotesDeReparo = 0;
+        this.enviando = false;
+        this.tentativasDaConexao = 5;
+        this.sessoes = new ConcurrentHashMap<Integer, Sessao>();
+        this.arquivosFinalizados = ConcurrentHashMap.newKeySet();
+        this.arvores = new ConcurrentHashMap<String, ArvoreDeHashes>();
+        this.assinaturas = new ConcurrentHashMap<Integer, TabelaDeAssinaturas>();
+        this.comparacoesConcluidas = new ConcurrentLinkedQueue<TabelaDeAssinaturas>();
+        this.proximoIdConexao = new AtomicInteger(new SecureRandom().nextInt());
         this.repositorio = repositorio;
     }
 
@@ -136,13 +183,380 @@ public class Transmissor {
      * @param pacing o tempo em milisegundos de espaçamento entre o envio dos
      * pacotes.
      *
+     * @deprecated substituído por setTaxaDeEnvio(long) e
+     * setTaxaDeEnvioEmPacotes(long), que permitem controlar a taxa com precisão
+     * muito maior que um milissegundo.
+     *
      */
+    @Deprecated
     public void setPacing(int pacing) {
         if (pacing >= 0) {
-            this.pacing = pacing;
+            cadenciador.setIntervalo(TimeUnit.MILLISECONDS.toNanos(pacing));
+        }
+    }
+
+    /**
+     * Altera a taxa máxima de envio, em bytes por segundo, de cada sessão.
+     *
+     * O envio dos pacotes é cadenciado por um balde de fichas com resolução de
+     * nanossegundos, o que permite limitar a transmissão com precisão mesmo em
+     * taxas de centenas de megabits por segundo. Caso o valor seja zero, a
+     * taxa não será limitada. Por padrão a taxa equivale a um pacote a cada 7
+     * milisegundos. Nas sessões unicast a taxa só é aplicada depois de
+     * desativarControleDeCongestionamento().
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param bytesPorSegundo a quantidade máxima de bytes enviados por segundo
+     * para cada receptor.
+     *
+     */
+    public void setTaxaDeEnvio(long bytesPorSegundo) {
+        if (bytesPorSegundo >= 0) {
+            cadenciador.setTaxaEmBytes(bytesPorSegundo);
+        }
+    }
+
+    /**
+     * Altera a taxa máxima de envio, em pacotes por segundo, de cada sessão.
+     *
+     * Funciona da mesma forma que setTaxaDeEnvio(long), porém a taxa é
+     * contada em pacotes independentemente do seu tamanho. Caso o valor seja
+     * zero, a taxa não será limitada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param pacotesPorSegundo a quantidade máxima de pacotes enviados por
+     * segundo para cada receptor.
+     *
+     */
+    public void setTaxaDeEnvioEmPacotes(long pacotesPorSegundo) {
+        if (pacotesPorSegundo >= 0) {
+            cadenciador.setTaxaEmPacotes(pacotesPorSegundo);
+        }
+    }
+
+    /**
+     * Altera a quantidade de pacotes que podem ser enviados de uma só vez,
+     * sem espaçamento, após um período ocioso.
+     *
+     * Uma pequena rajada permite que o transmissor recupere o atraso causado
+     * pelo escalonamento do sistema operacional sem perder taxa. Caso o valor
+     * seja zero, a rajada equivale a um milissegundo de envio na taxa
+     * configurada, que é o valor padrão.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param pacotes o número de pacotes permitidos em uma rajada.
+     *
+     */
+    public void setRajada(int pacotes) {
+        if (pacotes >= 0) {
+            cadenciador.setRajada(pacotes);
+        }
+    }
+
+    /**
+     * Define o controle de congestionamento utilizado para adaptar a taxa de
+     * envio de cada sessão às condições da rede.
+     *
+     * Cada sessão recebe uma nova instância do controle, que é informada das
+     * perdas, do tempo de ida e volta e da taxa de entrega medidos a partir
+     * dos relatórios do receptor. Enquanto houver um controle definido, a taxa
+     * configurada por setTaxaDeEnvio(long) é ignorada, mas a rajada continua
+     * valendo. Por padrão as sessões unicast usam ControleAIMD; as sessões
+     * multicast sempre usam a taxa fixa. As implementações disponíveis são
+     * ControleAIMD, indicado para redes locais, e ControleSondagemDeBanda,
+     * indicado para enlaces longos com perdas.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param fabrica cria o controle de cada sessão, por exemplo
+     * ControleSondagemDeBanda::new, ou null para usar a taxa fixa.
+     *
+     */
+    public void setControleDeCongestionamento(Supplier<? extends ControleDeCongestionamento> fabrica) {
+        this.controleDeCongestionamento = fabrica;
+    }
+
+    /**
+     * Desativa o controle de congestionamento, fazendo com que todas as
+     * sessões sejam transmitidas na taxa fixa definida por
+     * setTaxaDeEnvio(long) ou setTaxaDeEnvioEmPacotes(long).
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     */
+    public void desativarControleDeCongestionamento() {
+        this.controleDeCongestionamento = null;
+    }
+
+    /**
+     * Altera o número máximo de canais paralelos usados em cada sessão.
+     *
+     * O receptor pode pedir que os blocos do arquivo sejam distribuídos entre
+     * vários sockets, cada um com sua própria thread de envio no transmissor
+     * e de recepção no receptor, para que um único arquivo aproveite vários
+     * núcleos. O transmissor continua decidindo o que enviar em uma única
+     * thread, e as threads dos canais apenas montam e enviam os pacotes. O
+     * número de canais de cada sessão é o menor entre o pedido pelo receptor
+     * e o valor informado aqui, que deve estar entre 1 e 64. Por padrão é o
+     * número de processadores disponíveis.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param quantidade o número máximo de canais por sessão.
+     *
+     */
+    public void setQuantidadeMaximaDeCanais(int quantidade) {
+        if (quantidade >= 1 && quantidade <= SolicitarConexao.MAXIMO_DE_CANAIS) {
+            this.quantidadeMaximaDeCanais = quantidade;
         }
     }
 
+    /**
+     * Altera o tamanho máximo, em bytes, dos dados carregados em cada pacote.
+     *
+     * O tamanho dos pacotes é negociado com cada receptor no estabelecimento
+     * da conexão, e nunca passará do valor informado aqui. Pacotes maiores
+     * reduzem o custo por byte transmitido, mas cada perda descarta mais
+     * dados. O valor deve estar entre 500 e 65490 bytes, sendo o maior deles
+     * o padrão.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param bytes o tamanho máximo dos dados de cada pacote.
+     *
+     */
+    public void setTamanhoMaximoDosPacotes(int bytes) {
+        if (bytes >= Pacote.TAMANHO_MAX_DADOS && bytes <= Dados.TAMANHO_MAX_NEGOCIAVEL) {
+            this.tamanhoMaximoDosPacotes = bytes;
+        }
+    }
+
+    /**
+     * Define se cada pacote é enviado uma única vez e reenviado apenas sob
+     * demanda.
+     *
+     * Com o envio único, que é o padrão, cada pacote da janela é enviado uma
+     * vez e só é reenviado quando o receptor o relata como perdido ou quando
+     * o temporizador de reenvio expira sem que a janela avance. Caso seja
+     * desativado, o transmissor volta a percorrer continuamente a janela,
+     * reenviando os pacotes ainda não confirmados, o que gasta banda com
+     * duplicatas mas pode reduzir a latência em redes com muitas perdas.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param envioUnico true para enviar cada pacote uma vez, false para
+     * percorrer a janela continuamente.
+     *
+     */
+    public void setEnvioUnico(boolean envioUnico) {
+        this.envioUnico = envioUnico;
+    }
+
+    /**
+     * Altera a fração de pacotes de reparo enviados junto com cada buffer.
+     *
+     * Ao terminar o envio de um buffer, o transmissor envia pacotes de reparo
+     * com o XOR de grupos intercalados de pacotes do buffer, de forma que o
+     * receptor reconstrói sozinho um pacote perdido em cada grupo, sem esperar
+     * o timeout do buffer e o reenvio. Uma redundância de 0.02, por exemplo,
+     * envia 10 pacotes de reparo a cada buffer de 500 pacotes. O valor deve
+     * estar entre 0 e 0.25, sendo 0, que desativa os reparos, o padrão.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param redundancia a quantidade de pacotes de reparo por pacote de
+     * dados.
+     *
+     */
+    public void setRedundancia(double redundancia) {
+        if (redundancia >= 0 && redundancia <= Reparo.REDUNDANCIA_MAXIMA) {
+            this.redundancia = redundancia;
+        }
+    }
+
+    /**
+     * Define se a quantidade de pacotes de reparo acompanha a perda medida
+     * em cada sessão.
+     *
+     * Quando ativado, cada sessão envia pacotes de reparo proporcionais a
+     * três vezes a taxa de perda observada nos relatórios, nunca menos que o
+     * valor de setRedundancia(double), e deixa de enviá-los enquanto a rede
+     * não perder pacotes. Por padrão é desativado.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param adaptativa true para ajustar os reparos conforme a perda medida.
+     *
+     */
+    public void setRedundanciaAdaptativa(boolean adaptativa) {
+        this.redundanciaAdaptativa = adaptativa;
+    }
+
+    /**
+     * Define se o transmissor aceita comprimir os dados para os receptores
+     * que pedirem compressão.
+     *
+     * Cada buffer do arquivo é comprimido com Deflate por um conjunto de
+     * threads, uma por processador, antes de ser enviado. Um buffer que não
+     * economiza ao menos um pacote segue sem compressão. A compressão não é
+     * usada em arquivos acompanhados e desativa os pacotes de reparo da
+     * sessão. Por padrão é ativada.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param compressao true para atender aos pedidos de compressão.
+     *
+     */
+    public void setCompressao(boolean compressao) {
+        this.compressao = compressao;
+    }
+
+    /**
+     * Altera o tamanho máximo, em bytes, do cache de buffers comprimidos
+     * compartilhado entre as sessões.
+     *
+     * Cada buffer comprimido fica guardado em memória junto com o caminho, o
+     * tamanho e a data de modificação do arquivo, de modo que receptores que
+     * pedem o mesmo arquivo com o mesmo tamanho de pacote recebem os dados já
+     * comprimidos, sem ler nem comprimir o arquivo novamente. Ao atingir o
+     * limite, os buffers usados há mais tempo são descartados. O valor zero
+     * desativa o cache. Por padrão é de 256 megabytes.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param bytes o tamanho máximo do cache.
+     *
+     */
+    public void setTamanhoDoCache(long bytes) {
+        if (bytes >= 0) {
+            cacheDeBlocos.setCapacidade(bytes);
+        }
+    }
+
+    /**
+     * Retorna quantas vezes um buffer comprimido foi encontrado no cache.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de acertos do cache.
+     *
+     */
+    public long getAcertosDoCache() {
+        return cacheDeBlocos.getAcertos();
+    }
+
+    /**
+     * Retorna quantas vezes um buffer precisou ser lido e comprimido por não
+     * estar no cache.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de falhas do cache.
+     *
+     */
+    public long getFalhasDoCache() {
+        return cacheDeBlocos.getFalhas();
+    }
+
+    /**
+     * Define o grupo multicast usado para distribuir um arquivo a vários
+     * receptores de uma só vez.
+     *
+     * Receptores que pedem o modo multicast e chegam enquanto a transmissão de
+     * um mesmo arquivo, com o mesmo tamanho de pacote, ainda não avançou
+     * entram na mesma sessão: cada pacote é enviado uma única vez ao grupo, e
+     * os relatórios de cada receptor continuam chegando por unicast. A janela
+     * só avança quando todos os receptores confirmam os pacotes, e um pacote
+     * pedido por vários receptores é reenviado ao grupo apenas uma vez.
+     * Receptores que chegam depois recebem uma nova sessão no mesmo grupo. O
+     * controle de congestionamento e os canais paralelos não são usados nessas
+     * sessões, e pedidos de acompanhamento, de retomada ou de delta continuam
+     * sendo atendidos por unicast. Por padrão é desativado.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param grupo o endereço multicast do grupo, ou null para desativar o
+     * modo multicast.
+     * @param porta a porta do grupo na qual os receptores recebem os dados.
+     *
+     * @throws UnknownHostException caso o endereço do grupo não possa ser
+     * resolvido.
+     *
+     */
+    public void setMulticast(String grupo, int porta) throws UnknownHostException {
+        if (grupo == null) {
+            this.grupo = null;
+            return;
+        }
+
+        InetAddress endereco = InetAddress.getByName(grupo);
+        if (endereco.isMulticastAddress() && porta > 0 && porta <= 0xFFFF) {
+            this.grupo = new InetSocketAddress(endereco, porta);
+        }
+    }
+
+    /**
+     * Retorna o total de pacotes de dados enviados pelo transmissor,
+     * incluindo os reenvios.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes de dados enviados.
+     *
+     */
+    public long getPacotesEnviados() {
+        long total = pacotesEnviados;
+
+        for (Sessao sessao : sessoes.values()) {
+            total += sessao.getPacotesEnviados();
+        }
+
+        return total;
+    }
+
+    /**
+     * Retorna quantos dos pacotes de dados enviados eram reenvios de pacotes
+     * já enviados anteriormente.
+     *
+     * Junto com getPacotesEnviados(), permite medir quanto da banda foi gasta
+     * com duplicatas.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes de dados reenviados.
+     *
+     */
+    public long getPacotesReenviados() {
+        long total = pacotesReenviados;
+
+        for (Sessao sessao : sessoes.values()) {
+            total += sessao.getPacotesReenviados();
+        }
+
+        return total;
+    }
+
+    /**
+     * Retorna o total de pacotes de reparo enviados pelo transmissor.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return a quantidade de pacotes de reparo enviados.
+     *
+     */
+    public long getPacotesDeReparo() {
+        long total = pacotesDeReparo;
+
+        for (Sessao sessao : sessoes.values()) {
+            total += sessao.getPacotesDeReparo();
+        }
+
+        return total;
+    }
+
     /**
      * Altera o número de vezes que um pacote perdido será reenviado após a
      * detecção da perda.
@@ -203,237 +617,618 @@ public class Transmissor {
      *
      */
     public boolean enviar() throws FileNotFoundException, IOException, InterruptedException {
+        return executar(false);
+    }
+
+    /**
+     * Atende vários receptores simultaneamente através da mesma porta.
+     *
+     * O transmissor funciona como um servidor de distribuição: cada pedido de
+     * conexão recebido cria uma nova sessão, com a sua própria lista de
+     * pacotes, lista de pacotes perdidos e arquivo aberto. Todas as sessões
+     * são enviadas de forma intercalada pela mesma porta, sem que um receptor
+     * precise esperar o término da transmissão de outro. Sessões que ficarem
+     * mais de 30 segundos sem enviar relatórios são descartadas. O método só
+     * retorna após uma chamada a parar().
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     */
+    public void servir() throws IOException, InterruptedException {
+        executar(true);
+    }
+
+    /**
+     * Encerra o envio de dados, finalizando todas as sessões em andamento.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     */
+    public void parar() {
+        enviando = false;
+
+        Selector seletor = this.seletor;
+        if (seletor != null) {
+            seletor.wakeup();
+        }
+    }
+
+    /**
+     * Marca o fim de um arquivo que está sendo acompanhado.
+     *
+     * Receptores que pedem o acompanhamento de um arquivo recebem os dados à
+     * medida que são acrescentados ao arquivo, sem um tamanho previsto. Após
+     * essa chamada, o transmissor lê o tamanho final do arquivo, envia os
+     * dados restantes e avisa os receptores do fim do fluxo, encerrando as
+     * sessões. Novos pedidos de acompanhamento desse arquivo passam a ser
+     * atendidos como transmissões comuns.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @param arquivo o nome do arquivo, relativo ao repositório, que não
+     * receberá mais dados.
+     *
+     */
+    public void finalizarAcompanhamento(String arquivo) {
+        arquivosFinalizados.add(arquivo);
+
+        Selector seletor = this.seletor;
+        if (seletor != null) {
+            seletor.wakeup();
+        }
+    }
+
+    /**
+     * Retorna o número de sessões em andamento no transmissor.
+     *
+     * @author Marcelo Canzian Nunes
+     *
+     * @return o número de receptores sendo atendidos no momento.
+     *
+     */
+    public int getQuantidadeDeSessoes() {
+        return sessoes.size();
+    }
+
+    private boolean executar(boolean servidor) throws FileNotFoundException, IOException {
         this.enviando = true;
+        this.servindo = servidor;
+        this.houveConexao = false;
+
+        canal = DatagramChannel.open();
+        seletor = Selector.open();
+        recepcao = ByteBuffer.allocate(Relatorio.TAMANHO_CABECALHO + tamanhoMaximoDosPacotes);
+        relatorio = new Relatorio(null, porta);
+        temporizadores = new RodaDeTemporizadores<Sessao>(TimeUnit.MILLISECONDS.toNanos(1), System.nanoTime());
+        trabalhadores = Trabalhadores.criar("trabalhador");
 
         try {
-            socket = new DatagramSocket(portaReceptor);
+            canal.bind(new InetSocketAddress(porta));
+            canal.configureBlocking(false);
+            SelectionKey chave = canal.register(seletor, SelectionKey.OP_READ);
 
-            if (!criarConexao()) {
-                return false;
+            if (servidor) {
+                System.out.println("Aguardando conexões...");
+            } else {
+                System.out.println("Aguardando conexão...");
             }
 
-            socket.setSoTimeout(3000);
+            long proximaVerificacao = System.currentTimeMillis() + TEMPO_MAXIMO_DE_INATIVIDADE;
+            boolean envioBloqueado = false;
 
-            entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(repositorio + arquivo), Pacote.TAMANHO_MAX_DADOS));
-            preencherListaPacotes();
+            while (enviando) {
+                if (sessoes.isEmpty() && !servidor && houveConexao) {
+                    break;
+                }
 
-            receberRespostas();
-            TimeUnit.MILLISECONDS.sleep(100);
+                long espera = envioBloqueado ? ESPERA_MAXIMA : getEspera();
 
-            int ultimoPacoteNaLista = Integer.MIN_VALUE;
+                int prontos;
+                if (espera >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                    prontos = seletor.select(TimeUnit.NANOSECONDS.toMillis(espera));
+                } else {
+                    Cadenciador.esperar(espera);
+                    prontos = seletor.selectNow();
+                }
 
-            System.out.println("Enviando pacotes ...");
-            while (enviando) {
-                int i;
-                for (i = 0; i < pacotes.size(); i++) {
-                    if (houvePerdas) {
-                        reenviarPacotesPerdidos();
+                if (prontos > 0) {
+                    seletor.selectedKeys().clear();
+
+                    if (chave.isReadable() && !receberRespostas()) {
+                        return false;
+                    }
+
+                    if (!aceitarComparacoesConcluidas()) {
+                        return false;
                     }
 
-                    if (ultimoPacoteNaLista < ultimoPacoteOrdenado) {
-                        try {
-                            synchronized (this) {
-                                socket.send(pacotes.get(i).get());
-                            }
-                        } catch (IndexOutOfBoundsException e) {
-                        }
-                        TimeUnit.MILLISECONDS.sleep(pacing);
+                    if (envioBloqueado && chave.isWritable()) {
+                        envioBloqueado = false;
+                        chave.interestOps(SelectionKey.OP_READ);
                     }
                 }
+
+                dispararTemporizadores();
+                acompanharArquivos();
+
+                if (!envioBloqueado && !enviarRodada()) {
+                    envioBloqueado = true;
+                    chave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+
+                if (servidor && System.currentTimeMillis() >= proximaVerificacao) {
+                    removerSessoesInativas();
+                    proximaVerificacao = System.currentTimeMillis() + 1000;
+                }
             }
 
-        } catch (SocketTimeoutException ex) {
-            System.err.println("Ocorreu um erro na conexão.");
+        } catch (InterruptedException ex) {
             return false;
+        } finally {
+            enviando = false;
+            fecharSessoes();
+            trabalhadores.shutdownNow();
+            seletor.close();
+            canal.close();
         }
 
-        enviando = false;
-        entrada.close();
-        socket.close();
+        return true;
+    }
+
+    private long getEspera() {
+        long espera = ESPERA_MAXIMA;
+        long agora = System.nanoTime();
+
+        for (Sessao sessao : sessoes.values()) {
+            if (sessao.isPronta()) {
+                espera = Math.min(espera, sessao.getCadenciador().getAtraso());
+            }
+
+            if (sessao.isAcompanhando()) {
+                espera = Math.min(espera, Math.max(0, proximoAcompanhamento - agora));
+            }
+        }
+
+        long vencimento = temporizadores.getProximoVencimento();
+        if (vencimento != Long.MAX_VALUE) {
+            espera = Math.min(espera, Math.max(0, vencimento - agora));
+        }
+
+        return espera;
+    }
+
+    private void dispararTemporizadores() {
+        long agora = System.nanoTime();
+        temporizadores.avancar(agora);
+
+        Temporizador<Sessao> vencido;
+        while ((vencido = temporizadores.removerVencido()) != null) {
+            vencido.getDono().dispararTemporizador(agora);
+        }
+    }
+
+    private void acompanharArquivos() throws IOException {
+        long agora = System.nanoTime();
+
+        if (agora - proximoAcompanhamento < 0) {
+            return;
+        }
+
+        proximoAcompanhamento = agora + INTERVALO_DE_ACOMPANHAMENTO;
+        for (Sessao sessao : sessoes.values()) {
+            if (sessao.isAcompanhando()) {
+                sessao.acompanhar(arquivosFinalizados.contains(sessao.getArquivo()));
+            }
+        }
+    }
+
+    private boolean enviarRodada() throws IOException {
+        for (Sessao sessao : sessoes.values()) {
+            Cadenciador cadenciadorDaSessao = sessao.getCadenciador();
+
+            for (int i = 0; i < PACOTES_POR_RODADA; i++) {
+                if (!sessao.isPronta() || cadenciadorDaSessao.getAtraso() > 0) {
+                    break;
+                }
+
+                int bytes = sessao.enviarProximo(canal);
+                if (bytes == 0) {
+                    return false;
+                }
+
+                if (bytes < 0) {
+                    break;
+                }
+
+                cadenciadorDaSessao.consumir(bytes);
+            }
+        }
 
         return true;
     }
 
-    private boolean criarConexao() throws SocketException, UnknownHostException, InterruptedException {
-        byte[] buffer = new byte[Pacote.TAMANHO_MAX_DADOS];
-        DatagramPacket resposta = new DatagramPacket(buffer, buffer.length);
+    private boolean receberRespostas() throws FileNotFoundException, IOException {
+        SocketAddress origem;
 
-        System.out.println("Aguardando conexão...");
         while (true) {
-            try {
-                synchronized (this) {
-                    socket.receive(resposta);
+            recepcao.clear();
+            origem = canal.receive(recepcao);
+
+            if (origem == null) {
+                return true;
+            }
+
+            byte[] dados = recepcao.array();
+            int tamanho = recepcao.position();
+            InetSocketAddress endereco = (InetSocketAddress) origem;
+
+            if (tamanho == 0) {
+                continue;
+            }
+
+            if (Pacote.isSolicitarConexao(dados)) {
+                if (!atenderSolicitacao(endereco, dados, tamanho)) {
+                    return false;
                 }
+                continue;
+            }
 
-                if (Pacote.isSolicitarConexao(resposta.getData())) {
-                    SolicitarConexao solicitacao = new SolicitarConexao(resposta.getAddress(), resposta.getPort());
-                    hostnameReceptor = resposta.getAddress();
-                    portaReceptor = resposta.getPort();
+            if (Pacote.isAssinaturas(dados)) {
+                receberAssinaturas(ByteBuffer.wrap(dados, 0, tamanho));
+                continue;
+            }
 
-                    solicitacao.set(resposta.getData(), resposta.getLength());
-                    if (!setConexao(solicitacao)) {
-                        System.err.println("Não foi possível realizar a conexão.");
-                        return false;
-                    }
+            if (Pacote.isEncerarConexao(dados)) {
+                EncerrarConexao encerrar = new EncerrarConexao(endereco.getAddress(), endereco.getPort());
+                encerrar.set(dados, tamanho);
+                removerMembro(encerrar.getIdConexao(), endereco);
+                continue;
+            }
 
-                    File f = new File(repositorio + solicitacao.getArquivo());
-                    int quantidadePacotesPrevistos = (int) Math.ceil(f.length() / (float) TAMANHO_BUFFER);
-                    AceitarConexao aceitaConexao = new AceitarConexao(hostnameReceptor, portaReceptor);
-                    for (int i = 0; i < tentativasDaConexao; i++) {
-                        synchronized (this) {
-                            socket.send(aceitaConexao.set(idConexao, quantidadePacotesPrevistos));
-                        }
-                        TimeUnit.MILLISECONDS.sleep(pacing);
-                    }
+            if (!Pacote.isRelatorio(dados)) {
+                continue;
+            }
 
-                    System.out.println("Conexão aceita.");
+            relatorio.set(dados, tamanho);
 
-                    return true;
-                }
-            } catch (SocketTimeoutException e) {
-            } catch (IOException ex) {
+            Sessao sessao = sessoes.get(relatorio.getIdConexao());
+            if (sessao != null) {
+                sessao.processarRelatorio(relatorio, endereco);
+            }
+        }
+    }
+
+    private boolean atenderSolicitacao(InetSocketAddress endereco, byte[] dados, int tamanho) throws IOException {
+        Sessao sessao = getSessao(endereco);
+
+        if (sessao == null && grupo != null) {
+            sessao = entrarNoGrupo(endereco, dados, tamanho);
+        }
+
+        if (sessao == null && !servindo && houveConexao) {
+            return true;
+        }
+
+        if (sessao == null && isAguardandoAssinaturas(endereco, dados, tamanho)) {
+            return true;
+        }
+
+        try {
+            if (aceitarConexao(endereco, sessao, dados, tamanho) == null && !servindo) {
                 System.err.println("Não foi possível realizar a conexão.");
                 return false;
             }
+        } catch (FileNotFoundException e) {
+            if (!servindo) {
+                throw e;
+            }
+
+            System.err.println("Arquivo não encontrado no repositório.");
         }
 
+        return true;
     }
 
-    private boolean setConexao(SolicitarConexao solicitacao) {
-        if (solicitacao.getArquivo().length() > 250) {
-            System.err.println("O nome do arquivo deve ser menor que 250 caracteres.");
+    private void receberAssinaturas(ByteBuffer pacote) {
+        if (pacote.limit() < Assinaturas.TAMANHO_CABECALHO) {
+            return;
+        }
+
+        int token = Assinaturas.getToken(pacote);
+        int tamanhoDoBloco = Assinaturas.getTamanhoDoBloco(pacote);
+        int quantidade = Assinaturas.getQuantidade(pacote);
+        int indice = Assinaturas.getIndice(pacote);
+
+        if (token == 0 || tamanhoDoBloco < TabelaDeAssinaturas.TAMANHO_MINIMO_DO_BLOCO
+                || tamanhoDoBloco > TabelaDeAssinaturas.TAMANHO_MAXIMO_DO_BLOCO
+                || quantidade < 1 || quantidade > TabelaDeAssinaturas.MAXIMO_DE_ASSINATURAS
+                || indice < 0 || indice >= quantidade) {
+            return;
+        }
+
+        TabelaDeAssinaturas tabela = assinaturas.get(token);
+        if (tabela == null) {
+            if (assinaturas.size() >= MAXIMO_DE_TABELAS_DE_ASSINATURAS) {
+                return;
+            }
+
+            tabela = new TabelaDeAssinaturas(token, tamanhoDoBloco, quantidade);
+            assinaturas.put(token, tabela);
+        } else if (tabela.getTamanhoDoBloco() != tamanhoDoBloco || tabela.getQuantidade() != quantidade) {
+            return;
+        }
+
+        if (!tabela.isCompleta()) {
+            tabela.adicionar(pacote);
+        }
+    }
+
+    private boolean isAguardandoAssinaturas(InetSocketAddress endereco, byte[] dados, int tamanho) throws IOException {
+        SolicitarConexao solicitacao = new SolicitarConexao(endereco.getAddress(), endereco.getPort());
+        solicitacao.set(dados, tamanho);
+
+        if (solicitacao.getTokenDelta() == 0 || solicitacao.isAcompanhar()) {
+            return false;
+        }
+
+        final TabelaDeAssinaturas tabela = assinaturas.get(solicitacao.getTokenDelta());
+        if (tabela == null) {
+            return true;
+        }
+
+        if (tabela.isComparada()) {
             return false;
         }
 
-        arquivo = solicitacao.getArquivo();
-        tamanhoLista = solicitacao.getQuatidadeDeBuffers() * TAMANHO_BUFFER;
-        quantidadePacotesNaLista = 0;
+        ByteBuffer pendente = ByteBuffer.allocate(Assinaturas.TAMANHO_PENDENTE);
+        Assinaturas.setPendente(pendente, tabela.getToken(), tabela.getFaltando());
+        pendente.flip();
+        canal.send(pendente, endereco);
+
+        if (!tabela.isCompleta()) {
+            return true;
+        }
+
+        tabela.setSolicitacao(endereco, dados, tamanho);
+
+        if (tabela.iniciarComparacao()) {
+            final String caminho = repositorio + solicitacao.getArquivo();
+
+            try {
+                trabalhadores.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        tabela.comparar(caminho);
+                        comparacoesConcluidas.add(tabela);
+                        seletor.wakeup();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+            }
+        }
+
         return true;
     }
 
-    private synchronized void preencherListaPacotes() throws IOException {
-        if (fimArquivo) {
-            return;
+    private boolean aceitarComparacoesConcluidas() throws IOException {
+        TabelaDeAssinaturas tabela;
+
+        while ((tabela = comparacoesConcluidas.poll()) != null) {
+            byte[] solicitacao = tabela.getSolicitacao();
+
+            if (!atenderSolicitacao(tabela.getEndereco(), solicitacao, solicitacao.length)) {
+                return false;
+            }
         }
 
-        byte[] bytes = new byte[Pacote.TAMANHO_MAX_DADOS];
-        int bytesLidos;
-        for (int i = quantidadePacotesNaLista; i < tamanhoLista; i++) {
-            bytesLidos = entrada.read(bytes);
+        return true;
+    }
 
-            if (bytesLidos == -1) {
-                fimArquivo = true;
-                break;
+    private Sessao aceitarConexao(InetSocketAddress endereco, Sessao sessao, byte[] dados, int tamanho) throws IOException {
+        SolicitarConexao solicitacao = new SolicitarConexao(endereco.getAddress(), endereco.getPort());
+        solicitacao.set(dados, tamanho);
+
+        int tamanhoDados = getTamanhoDados(solicitacao);
+        if (sessao != null && tamanhoDados < sessao.getTamanhoDados()) {
+            removerMembro(sessao.getIdConexao(), endereco);
+            sessao = entrarNoGrupo(endereco, dados, tamanho);
+        }
+
+        if (sessao == null) {
+            if (!setConexao(solicitacao)) {
+                return null;
             }
 
-            Dados pacote = new Dados(hostnameReceptor, portaReceptor);
-            pacote.set(idConexao, sequencia, bytes, bytesLidos);
+            String caminho = repositorio + solicitacao.getArquivo();
+            boolean acompanhar = solicitacao.isAcompanhar() && !arquivosFinalizados.contains(solicitacao.getArquivo());
+            TabelaDeAssinaturas tabela = acompanhar ? null : assinaturas.get(solicitacao.getTokenDelta());
+            boolean delta = tabela != null && tabela.isComparada();
+            boolean comprimir = compressao && solicitacao.isComprimir() && !acompanhar && !delta;
+            boolean multicast = isMulticast(solicitacao);
+            int pacotesPorBuffer = Math.max(1, Math.min(TAMANHO_BUFFER, TAMANHO_MAXIMO_DO_BUFFER / tamanhoDados));
+
+            sessao = new Sessao(gerarIdConexao(), multicast ? grupo : endereco, solicitacao.getArquivo(),
+                    tamanhoDados, pacotesPorBuffer, solicitacao.getQuatidadeDeBuffers());
+            sessao.setCadenciador(new Cadenciador(cadenciador));
+            sessao.setRodaDeTemporizadores(temporizadores);
+            if (multicast) {
+                sessao.adicionarMembro(endereco);
+                canal.setOption(StandardSocketOptions.IP_MULTICAST_IF, GrupoMulticast.getInterface(endereco.getAddress()));
+            } else if (controleDeCongestionamento != null) {
+                sessao.setControleDeCongestionamento(controleDeCongestionamento.get());
+            }
+            sessao.setNumeroDeReenvios(numeroDeReenvios);
+            sessao.setEnvioUnico(envioUnico);
+            sessao.setRedundancia(acompanhar || comprimir || delta ? 0 : redundancia,
+                    !acompanhar && !comprimir && !delta && redundanciaAdaptativa);
+            sessao.setAcompanhamento(acompanhar);
+            sessao.abrir(caminho);
+            sessao.retomar(solicitacao);
+            if (comprimir) {
+                sessao.comprimir(trabalhadores, seletor, cacheDeBlocos, caminho);
+            }
+            if (solicitacao.isVerificar() && !acompanhar) {
+                sessao.verificar(getArvore(caminho, sessao));
+            }
+            if (delta) {
+                sessao.copiar(tabela.getTrechos(), tabela.getQuantidadeDeTrechos());
+            }
+            if (!multicast) {
+                sessao.setCanais(getDestinosDosCanais(endereco, solicitacao), seletor);
+            }
+            sessoes.put(sessao.getIdConexao(), sessao);
+            houveConexao = true;
 
-            addPacote(pacote);
+            System.out.println("Conexão aceita.");
         }
 
+        sessao.aceitar(tentativasDaConexao, endereco);
+
+        return sessao;
     }
 
-    private void receberRespostas() {
-        new Thread() {
-            @Override
-            public void run() {
-                try {
-                    byte[] buffer = new byte[Relatorio.TAMANHO_MAX];
-                    DatagramPacket pacote = new DatagramPacket(buffer, Relatorio.TAMANHO_MAX);
+    private Sessao entrarNoGrupo(InetSocketAddress endereco, byte[] dados, int tamanho) {
+        SolicitarConexao solicitacao = new SolicitarConexao(endereco.getAddress(), endereco.getPort());
+        solicitacao.set(dados, tamanho);
 
-                    while (enviando) {
-                        try {
-                            socket.receive(pacote);
-                            
-                            if (Pacote.isEncerarConexao(pacote.getData())) {
-                                enviando = false;
-                                continue;
-                            }
+        if (!isMulticast(solicitacao)) {
+            return null;
+        }
 
-                            Relatorio pacotesPerdidos = new Relatorio(pacote.getAddress(), pacote.getPort());
-                            pacotesPerdidos.set(pacote.getData(), pacote.getLength());
+        int tamanhoDados = getTamanhoDados(solicitacao);
+        int pacotesPorBuffer = Math.max(1, Math.min(TAMANHO_BUFFER, TAMANHO_MAXIMO_DO_BUFFER / tamanhoDados));
+        File arquivo = new File(repositorio + solicitacao.getArquivo());
 
-                            int numeroSequencia = pacotesPerdidos.getUltimoPacoteOrdenado();
-                            if (numeroSequencia > ultimoPacoteOrdenado) {
-                                ultimoPacoteOrdenado = numeroSequencia;
-                                atualizarListaDePacotes();
-                            }
+        for (Sessao sessao : sessoes.values()) {
+            if (sessao.isMulticast() && sessao.isAberta()
+                    && sessao.getArquivo().equals(solicitacao.getArquivo())
+                    && sessao.getTamanhoDados() == tamanhoDados
+                    && sessao.getTamanhoDaJanela() == pacotesPorBuffer * solicitacao.getQuatidadeDeBuffers()
+                    && sessao.isComprimindo() == (compressao && solicitacao.isComprimir())
+                    && sessao.isVerificando() == solicitacao.isVerificar()
+                    && sessao.getTamanhoArquivo() == arquivo.length()
+                    && sessao.getDataDeModificacao() == arquivo.lastModified()) {
+                sessao.adicionarMembro(endereco);
+                return sessao;
+            }
+        }
 
-                            if (pacotesPerdidos.getPacotesPerdidos().get(0) != -1) {
-                                atualizarListaDePacotesPerdidos(pacotesPerdidos.getPacotesPerdidos());
-                                houvePerdas = true;
-                            }
-                        } catch (SocketTimeoutException e) {
-                        } catch (SocketException e) {
-                            enviando = false;
-                        }
-                    }
-                } catch (SocketException ex) {
-                    enviando = false;
-                } catch (IOException ex) {
-                    enviando = false;
-                }
+        return null;
+    }
 
-            }
-        }.start();
+    private boolean isMulticast(SolicitarConexao solicitacao) {
+        return grupo != null && solicitacao.isMulticast() && !solicitacao.isAcompanhar()
+                && solicitacao.getPacoteInicial() == 0 && solicitacao.getTokenDelta() == 0;
     }
 
-    private synchronized void reenviarPacotesPerdidos() throws IOException, InterruptedException {
-        while (!pacotesPerdidos.isEmpty()) {
-            reenviarPacotePerdido();
+    private ArvoreDeHashes getArvore(String caminho, Sessao sessao) throws IOException {
+        String chave = caminho + File.pathSeparator + sessao.getTamanhoDoBloco();
+        ArvoreDeHashes arvore = arvores.get(chave);
+
+        if (arvore == null || !arvore.isAtual(sessao.getTamanhoArquivo(), sessao.getDataDeModificacao(), trabalhadores)) {
+            arvore = new ArvoreDeHashes(caminho, sessao.getTamanhoArquivo(), sessao.getDataDeModificacao(), sessao.getTamanhoDoBloco());
+            arvore.calcular(trabalhadores, seletor);
+            arvores.put(chave, arvore);
         }
 
-        atualizarListaDePacotes();
+        return arvore;
+    }
+
+    private InetSocketAddress[] getDestinosDosCanais(InetSocketAddress endereco, SolicitarConexao solicitacao) {
+        int[] portas = solicitacao.getPortasDosCanais();
+        InetSocketAddress[] destinos = new InetSocketAddress[Math.min(portas.length, quantidadeMaximaDeCanais)];
+
+        for (int i = 0; i < destinos.length; i++) {
+            destinos[i] = new InetSocketAddress(endereco.getAddress(), portas[i]);
+        }
 
-        houvePerdas = false;
+        return destinos;
     }
 
-    private synchronized void reenviarPacotePerdido() throws IOException, InterruptedException {
-        int pacotePerdido;
+    private int getTamanhoDados(SolicitarConexao solicitacao) {
+        int tamanhoDados = Math.min(solicitacao.getTamanhoDados(), tamanhoMaximoDosPacotes);
 
-        try {
-            pacotePerdido = pacotesPerdidos.remove(0);
+        if (redundancia > 0 || redundanciaAdaptativa) {
+            tamanhoDados = Math.min(tamanhoDados, solicitacao.getTamanhoDados() - Math.max(0, Reparo.TAMANHO_CABECALHO - Dados.TAMANHO_CABECALHO));
+        }
 
-            Dados pacote = pacotes.get(pacotePerdido - pacotes.get(0).getSequencia());
+        return Math.max(Pacote.TAMANHO_MAX_DADOS, tamanhoDados);
+    }
 
-            for (int i = numeroDeReenvios; i > 0; i--) {
-                socket.send(pacote.get());
-            }
-        } catch (IndexOutOfBoundsException e) {
+    private boolean setConexao(SolicitarConexao solicitacao) {
+        if (solicitacao.getArquivo().length() > 250) {
+            System.err.println("O nome do arquivo deve ser menor que 250 caracteres.");
+            return false;
         }
+
+        if (solicitacao.getArquivo().contains("..")) {
+            System.err.println("O nome do arquivo não pode referenciar diretórios fora do repositório.");
+            return false;
+        }
+
+        return true;
+    }
+
+    private int gerarIdConexao() {
+        int id;
+
+        do {
+            id = proximoIdConexao.incrementAndGet();
+        } while (sessoes.containsKey(id));
+
+        return id;
     }
 
-    private synchronized void atualizarListaDePacotes() throws IOException {
-        for (int i = pacotes.get(0).getSequencia(); i < ultimoPacoteOrdenado; i++) {
-            removePacote(0);
+    private Sessao getSessao(InetSocketAddress endereco) {
+        for (Sessao sessao : sessoes.values()) {
+            if (sessao.isMulticast() ? sessao.isMembro(endereco) : sessao.getEndereco().equals(endereco)) {
+                return sessao;
+            }
         }
 
-        preencherListaPacotes();
+        return null;
     }
 
-    private synchronized void atualizarListaDePacotesPerdidos(List<Integer> lista) {
-        int tamanho = lista.size();
+    private void removerSessao(int idConexao) {
+        Sessao sessao = sessoes.remove(idConexao);
 
-        for (int i = 0; i < tamanho; i++) {
-            addPacotePerdido(lista.get(i));
+        if (sessao != null) {
+            pacotesEnviados += sessao.getPacotesEnviados();
+            pacotesReenviados += sessao.getPacotesReenviados();
+            pacotesDeReparo += sessao.getPacotesDeReparo();
+            sessao.fechar();
         }
     }
 
-    private synchronized void addPacotePerdido(Integer numeroDeSequencia) {
-        pacotesPerdidos.add(numeroDeSequencia);
+    private void removerMembro(int idConexao, InetSocketAddress endereco) {
+        Sessao sessao = sessoes.get(idConexao);
+
+        if (sessao != null && (!sessao.isMulticast() || sessao.removerMembro(endereco))) {
+            removerSessao(idConexao);
+        }
     }
 
-    private synchronized void addPacote(Dados pacote) {
-        pacotes.add(pacote);
-        quantidadePacotesNaLista++;
-        sequencia++;
+    private void removerSessoesInativas() {
+        long agora = System.currentTimeMillis();
+
+        for (Sessao sessao : sessoes.values()) {
+            if (agora - sessao.getUltimaAtividade() > TEMPO_MAXIMO_DE_INATIVIDADE
+                    || (sessao.isMulticast() && sessao.removerMembrosInativos(agora, TEMPO_MAXIMO_DE_INATIVIDADE))) {
+                removerSessao(sessao.getIdConexao());
+            }
+        }
+
+        Iterator<TabelaDeAssinaturas> tabelas = assinaturas.values().iterator();
+        while (tabelas.hasNext()) {
+            if (agora - tabelas.next().getCriacao() > TEMPO_MAXIMO_DE_INATIVIDADE) {
+                tabelas.remove();
+            }
+        }
     }
 
-    private synchronized void removePacote(int index) {
-        if (!pacotes.isEmpty()) {
-            pacotes.remove(index);
-            quantidadePacotesNaLista--;
+    private void fecharSessoes() {
+        for (Integer idConexao : sessoes.keySet()) {
+            removerSessao(idConexao);
         }
     }
 
@@ -0,0 +1,179 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferTest {
+
+    private static final int TAMANHO_DADOS = 500;
+    private static final int TAMANHO_DO_ULTIMO = 100;
+    private static final int PACOTES = 3;
+    private static final int KEY = 0;
+    private static final int ID_CONEXAO = 7;
+
+    private byte[][] pacotes;
+    private RodaDeTemporizadores<Buffer> temporizadores;
+    private Buffer buffer;
+
+    @Before
+    public void preparar() {
+        Random aleatorio = new Random(42);
+
+        pacotes = new byte[PACOTES][];
+        for (int i = 0; i < PACOTES; i++) {
+            pacotes[i] = new byte[i == PACOTES - 1 ? TAMANHO_DO_ULTIMO : TAMANHO_DADOS];
+            aleatorio.nextBytes(pacotes[i]);
+        }
+
+        temporizadores = new RodaDeTemporizadores<Buffer>(TimeUnit.MILLISECONDS.toNanos(1), System.nanoTime());
+        buffer = new Buffer(PACOTES, TAMANHO_DADOS, temporizadores);
+    }
+
+    @Test
+    public void recuperaUltimoPacoteCurto() {
+        assertTrue(buffer.set(KEY, PACOTES, 0, ID_CONEXAO, ByteBuffer.wrap(pacotes[0])));
+        assertTrue(buffer.set(KEY, PACOTES, 1, ID_CONEXAO, ByteBuffer.wrap(pacotes[1])));
+        assertTrue(buffer.setReparo(KEY, PACOTES, TAMANHO_DO_ULTIMO, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo())));
+
+        assertTrue(buffer.isCheio());
+        assertEquals(1, buffer.getPacotesRecuperados());
+        assertConteudo(buffer.getDados());
+    }
+
+    @Test
+    public void recuperaPacoteIntermediarioComUltimoCurto() {
+        assertTrue(buffer.set(KEY, PACOTES, 0, ID_CONEXAO, ByteBuffer.wrap(pacotes[0])));
+        assertTrue(buffer.set(KEY, PACOTES, 2, ID_CONEXAO, ByteBuffer.wrap(pacotes[2])));
+        assertTrue(buffer.setReparo(KEY, PACOTES, TAMANHO_DO_ULTIMO, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo())));
+
+        assertTrue(buffer.isCheio());
+        assertConteudo(buffer.getDados());
+    }
+
+    @Test
+    public void hashConfereAposRecuperarUltimoPacote() {
+        buffer.setVerificacao(true);
+        assertTrue(buffer.setHash(KEY, PACOTES, ID_CONEXAO, getPacoteDeHash(ArvoreDeHashes.calcularFolha(ByteBuffer.wrap(getConteudo())))));
+
+        buffer.set(KEY, PACOTES, 0, ID_CONEXAO, ByteBuffer.wrap(pacotes[0]));
+        buffer.set(KEY, PACOTES, 1, ID_CONEXAO, ByteBuffer.wrap(pacotes[1]));
+        buffer.setReparo(KEY, PACOTES, TAMANHO_DO_ULTIMO, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo()));
+
+        assertTrue(buffer.iniciarVerificacao());
+        assertTrue(buffer.calcularHash(KEY));
+        assertEquals(1, buffer.conferirHash(KEY, new byte[ArvoreDeHashes.TAMANHO_HASH], 0));
+        assertTrue(buffer.isPronto());
+    }
+
+    @Test
+    public void recuperaNovamenteAposHashDivergente() {
+        buffer.setVerificacao(true);
+        buffer.setHash(KEY, PACOTES, ID_CONEXAO, getPacoteDeHash(new byte[ArvoreDeHashes.TAMANHO_HASH]));
+
+        buffer.set(KEY, PACOTES, 0, ID_CONEXAO, ByteBuffer.wrap(pacotes[0]));
+        buffer.set(KEY, PACOTES, 1, ID_CONEXAO, ByteBuffer.wrap(pacotes[1]));
+        buffer.setReparo(KEY, PACOTES, TAMANHO_DO_ULTIMO, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo()));
+        buffer.iniciarVerificacao();
+        buffer.calcularHash(KEY);
+
+        assertEquals(-1, buffer.conferirHash(KEY, new byte[ArvoreDeHashes.TAMANHO_HASH], 0));
+        assertFalse(buffer.isCheio());
+
+        assertTrue(buffer.set(KEY, PACOTES, 0, ID_CONEXAO, ByteBuffer.wrap(pacotes[0])));
+        assertTrue(buffer.set(KEY, PACOTES, 1, ID_CONEXAO, ByteBuffer.wrap(pacotes[1])));
+        assertTrue(buffer.setReparo(KEY, PACOTES, TAMANHO_DO_ULTIMO, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo())));
+
+        assertTrue(buffer.isCheio());
+        assertEquals(2, buffer.getPacotesRecuperados());
+        assertConteudo(buffer.getDados());
+    }
+
+    @Test
+    public void recusaReparoComTamanhoDoUltimoDivergente() {
+        assertTrue(buffer.setReparo(KEY, PACOTES, TAMANHO_DO_ULTIMO, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo())));
+
+        assertFalse(buffer.setReparo(KEY, PACOTES, TAMANHO_DADOS, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo())));
+        assertFalse(buffer.setReparo(KEY, PACOTES, 0, 0, 1, ID_CONEXAO, ByteBuffer.wrap(getReparo())));
+    }
+
+    @Test
+    public void timeoutMenorAntecipaOTemporizadorPendente() {
+        long inicio = System.nanoTime();
+
+        buffer.iniciarTimeout();
+        assertTrue(temporizadores.getProximoVencimento() - inicio >= TimeUnit.SECONDS.toNanos(2));
+
+        buffer.setTimeout(10);
+        long vencimento = temporizadores.getProximoVencimento();
+        assertTrue(vencimento - inicio < TimeUnit.SECONDS.toNanos(1));
+
+        buffer.setTimeout(5000);
+        assertEquals(vencimento, temporizadores.getProximoVencimento());
+    }
+
+    private byte[] getReparo() {
+        byte[] reparo = new byte[TAMANHO_DADOS];
+
+        for (byte[] pacote : pacotes) {
+            for (int i = 0; i < pacote.length; i++) {
+                reparo[i] ^= pacote[i];
+            }
+        }
+
+        return reparo;
+    }
+
+    private byte[] getConteudo() {
+        byte[] conteudo = new byte[(PACOTES - 1) * TAMANHO_DADOS + TAMANHO_DO_ULTIMO];
+
+        for (int i = 0; i < PACOTES; i++) {
+            System.arraycopy(pacotes[i], 0, conteudo, i * TAMANHO_DADOS, pacotes[i].length);
+        }
+
+        return conteudo;
+    }
+
+    private ByteBuffer getPacoteDeHash(byte[] hash) {
+        ByteBuffer pacote = ByteBuffer.allocate(HashDoBloco.TAMANHO_MIN);
+
+        HashDoBloco.setCabecalho(pacote, ID_CONEXAO, KEY);
+        pacote.position(HashDoBloco.TAMANHO_CABECALHO);
+        pacote.put(hash);
+        pacote.flip();
+
+        return pacote;
+    }
+
+    private void assertConteudo(ByteBuffer dados) {
+        byte[] recebido = new byte[dados.remaining()];
+        dados.duplicate().get(recebido);
+
+        assertEquals(getConteudo().length, recebido.length);
+        assertTrue(ByteBuffer.wrap(getConteudo()).equals(ByteBuffer.wrap(recebido)));
+    }
+
+}
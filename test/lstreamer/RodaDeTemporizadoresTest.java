@@ -0,0 +1,196 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RodaDeTemporizadoresTest {
+
+    private static final long ORIGEM = 1000;
+    private static final long RESOLUCAO = 1;
+    private static final long[] PRAZOS = {
+        1, 2, 62, 63, 64, 65, 127, 128, 4095, 4096, 4097, 262143, 262144, 262145,
+        1L << 20, (1L << 24) + 1, 1L << 30, (1L << 36) - 1, 1L << 40, 1L << 50, 1L << 60
+    };
+
+    private RodaDeTemporizadores<Integer> roda;
+    private Map<Temporizador<Integer>, Long> pendentes;
+    private long agora;
+
+    @Before
+    public void preparar() {
+        roda = new RodaDeTemporizadores<Integer>(RESOLUCAO, ORIGEM);
+        pendentes = new HashMap<Temporizador<Integer>, Long>();
+        agora = ORIGEM;
+    }
+
+    @Test
+    public void venceEmOrdemAtravesDosNiveis() {
+        for (int i = PRAZOS.length - 1; i >= 0; i--) {
+            agendar(new Temporizador<Integer>(i), ORIGEM + PRAZOS[i]);
+        }
+        assertEquals(PRAZOS.length, roda.getQuantidade());
+
+        List<Temporizador<Integer>> vencidos = drenar();
+
+        assertEquals(PRAZOS.length, vencidos.size());
+        for (int i = 0; i < PRAZOS.length; i++) {
+            assertEquals(i, vencidos.get(i).getDono().intValue());
+        }
+        assertEquals(0, roda.getQuantidade());
+        assertEquals(Long.MAX_VALUE, roda.getProximoVencimento());
+    }
+
+    @Test
+    public void reagendaECancelaAtravesDosNiveis() {
+        List<Temporizador<Integer>> temporizadores = new ArrayList<Temporizador<Integer>>();
+        for (int i = 0; i < PRAZOS.length; i++) {
+            Temporizador<Integer> temporizador = new Temporizador<Integer>(i);
+            temporizadores.add(temporizador);
+            agendar(temporizador, ORIGEM + PRAZOS[i]);
+        }
+
+        agendar(temporizadores.get(0), ORIGEM + 4097);
+        agendar(temporizadores.get(PRAZOS.length - 1), ORIGEM + 63);
+        agendar(temporizadores.get(9), ORIGEM + (1L << 40) + 1);
+        cancelar(temporizadores.get(4));
+        cancelar(temporizadores.get(12));
+        cancelar(temporizadores.get(4));
+
+        avancarAte(ORIGEM + 4096);
+
+        agendar(temporizadores.get(PRAZOS.length - 2), agora + 1);
+        agendar(temporizadores.get(4), agora + 64);
+        agendar(temporizadores.get(16), agora + 4096);
+        cancelar(temporizadores.get(0));
+
+        List<Temporizador<Integer>> vencidos = drenar();
+
+        assertFalse(vencidos.contains(temporizadores.get(0)));
+        assertFalse(vencidos.contains(temporizadores.get(12)));
+        assertTrue(vencidos.contains(temporizadores.get(4)));
+        assertEquals(0, roda.getQuantidade());
+        assertTrue(pendentes.isEmpty());
+    }
+
+    @Test
+    public void prazoPassadoVenceImediatamente() {
+        Temporizador<Integer> temporizador = new Temporizador<Integer>(1);
+
+        roda.avancar(ORIGEM + 100);
+        roda.agendar(temporizador, ORIGEM + 50);
+
+        assertEquals(ORIGEM + 100, roda.getProximoVencimento());
+        assertSame(temporizador, roda.removerVencido());
+        assertFalse(temporizador.isAgendado());
+        assertNull(roda.removerVencido());
+        assertEquals(0, roda.getQuantidade());
+    }
+
+    @Test
+    public void operacoesAleatoriasMantemAOrdem() {
+        Random aleatorio = new Random(42);
+        List<Temporizador<Integer>> temporizadores = new ArrayList<Temporizador<Integer>>();
+
+        for (int i = 0; i < 256; i++) {
+            temporizadores.add(new Temporizador<Integer>(i));
+        }
+
+        for (int rodada = 0; rodada < 20000; rodada++) {
+            Temporizador<Integer> temporizador = temporizadores.get(aleatorio.nextInt(temporizadores.size()));
+            int operacao = aleatorio.nextInt(10);
+
+            if (operacao < 5) {
+                agendar(temporizador, agora + 1 + (aleatorio.nextLong() & ((1L << aleatorio.nextInt(42)) - 1)));
+            } else if (operacao < 6) {
+                cancelar(temporizador);
+            } else if (operacao < 9) {
+                avancarAte(roda.getProximoVencimento());
+            } else if (!pendentes.isEmpty()) {
+                avancarAte(agora + (aleatorio.nextLong() & ((1L << aleatorio.nextInt(24)) - 1)));
+            }
+            assertEquals(pendentes.size(), roda.getQuantidade());
+        }
+
+        drenar();
+        assertEquals(0, roda.getQuantidade());
+    }
+
+    private void agendar(Temporizador<Integer> temporizador, long prazo) {
+        roda.agendar(temporizador, prazo);
+        pendentes.put(temporizador, prazo);
+        assertTrue(temporizador.isAgendado());
+    }
+
+    private void cancelar(Temporizador<Integer> temporizador) {
+        roda.cancelar(temporizador);
+        pendentes.remove(temporizador);
+        assertFalse(temporizador.isAgendado());
+    }
+
+    private List<Temporizador<Integer>> drenar() {
+        List<Temporizador<Integer>> vencidos = new ArrayList<Temporizador<Integer>>();
+
+        while (roda.getProximoVencimento() != Long.MAX_VALUE) {
+            long vencimento = roda.getProximoVencimento();
+
+            assertTrue(vencimento > agora);
+            vencidos.addAll(avancarAte(vencimento));
+        }
+        assertTrue(pendentes.isEmpty());
+
+        return vencidos;
+    }
+
+    private List<Temporizador<Integer>> avancarAte(long instante) {
+        List<Temporizador<Integer>> vencidos = new ArrayList<Temporizador<Integer>>();
+        Temporizador<Integer> temporizador;
+        long anterior = agora;
+
+        agora = Math.max(agora, instante);
+        roda.avancar(agora);
+        while ((temporizador = roda.removerVencido()) != null) {
+            Long prazo = pendentes.remove(temporizador);
+
+            assertTrue(prazo != null);
+            assertTrue(prazo <= agora);
+            assertTrue(prazo > anterior);
+            assertFalse(temporizador.isAgendado());
+            vencidos.add(temporizador);
+        }
+
+        for (long prazo : pendentes.values()) {
+            assertTrue(prazo > agora);
+        }
+
+        return vencidos;
+    }
+
+}
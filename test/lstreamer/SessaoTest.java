@@ -0,0 +1,131 @@
+/* 
+Copyright [2015] [Marcelo Canzian Nunes]
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package lstreamer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessaoTest {
+
+    private static final int ID_CONEXAO = 7;
+    private static final int TAMANHO_DADOS = 100;
+    private static final int PACOTES_POR_BUFFER = 50;
+    private static final int QUANTIDADE_DE_BUFFERS = 4;
+    private static final int PACOTES = 100;
+
+    private File arquivo;
+    private DatagramChannel receptor;
+    private DatagramChannel canal;
+    private InetSocketAddress destino;
+    private Relatorio relatorio;
+    private Sessao sessao;
+
+    @Before
+    public void preparar() throws IOException {
+        arquivo = File.createTempFile("sessao", ".bin");
+        Files.write(arquivo.toPath(), new byte[PACOTES * TAMANHO_DADOS]);
+
+        receptor = DatagramChannel.open();
+        receptor.bind(new InetSocketAddress("127.0.0.1", 0));
+        receptor.configureBlocking(false);
+        destino = (InetSocketAddress) receptor.getLocalAddress();
+        canal = DatagramChannel.open();
+        relatorio = new Relatorio(destino.getAddress(), destino.getPort());
+
+        sessao = new Sessao(ID_CONEXAO, destino, arquivo.getName(), TAMANHO_DADOS, PACOTES_POR_BUFFER, QUANTIDADE_DE_BUFFERS);
+        sessao.setCadenciador(new Cadenciador());
+        sessao.setRodaDeTemporizadores(new RodaDeTemporizadores<Sessao>(TimeUnit.MILLISECONDS.toNanos(1), System.nanoTime()));
+        sessao.abrir(arquivo.getPath());
+
+        relatar(0, -1, 0, 0);
+        assertEquals(0, enviarPendentes());
+        assertEquals(PACOTES, sessao.getPacotesEnviados());
+    }
+
+    @After
+    public void encerrar() throws IOException {
+        sessao.fechar();
+        canal.close();
+        receptor.close();
+        arquivo.delete();
+    }
+
+    @Test
+    public void timeoutReenviaApenasUmaSonda() throws IOException {
+        sessao.dispararTemporizador(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        assertEquals(1, enviarPendentes());
+
+        sessao.dispararTemporizador(System.nanoTime() + TimeUnit.MINUTES.toNanos(2));
+        assertEquals(1, enviarPendentes());
+    }
+
+    @Test
+    public void timeoutAposRelatorioNaoReenviaPacotesConfirmados() throws IOException {
+        relatar(0, PACOTES - 1, 10, 3);
+        assertEquals(3, enviarPendentes());
+
+        sessao.dispararTemporizador(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        assertEquals(1, enviarPendentes());
+    }
+
+    @Test
+    public void relatorioRepetidoNaoReenviaDentroDoSrtt() throws IOException, InterruptedException {
+        relatar(0, PACOTES - 1, 10, 3);
+        assertEquals(3, enviarPendentes());
+
+        relatar(0, PACOTES - 1, 10, 3);
+        assertEquals(0, enviarPendentes());
+
+        Thread.sleep(50);
+        relatar(0, PACOTES - 1, 10, 3);
+        assertEquals(3, enviarPendentes());
+    }
+
+    private void relatar(int ultimoPacoteOrdenado, int maiorSequenciaRecebida, int base, int perdidos) {
+        ByteBuffer dados = ByteBuffer.allocate(Relatorio.TAMANHO_MAX);
+
+        Relatorio.setCabecalho(dados, ID_CONEXAO, ultimoPacoteOrdenado, maiorSequenciaRecebida, maiorSequenciaRecebida + 1 - perdidos, 0, 0);
+        if (perdidos > 0) {
+            Relatorio.putPacotesPerdidos(dados, base, perdidos);
+        }
+
+        relatorio.set(dados.array(), dados.position());
+        sessao.processarRelatorio(relatorio, destino);
+    }
+
+    private long enviarPendentes() throws IOException {
+        long reenviados = sessao.getPacotesReenviados();
+
+        while (sessao.isPronta() && sessao.enviarProximo(canal) > 0) {
+            receptor.receive(ByteBuffer.allocate(Dados.TAMANHO_CABECALHO + TAMANHO_DADOS));
+        }
+
+        return sessao.getPacotesReenviados() - reenviados;
+    }
+
+}